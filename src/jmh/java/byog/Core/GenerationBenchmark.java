@@ -0,0 +1,108 @@
+package byog.Core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times Map.initialize() as a whole and up to each of its phases. Every benchmark generates a
+ * world from scratch through the phase it is named after, so the cost of a phase is the
+ * difference between its score and the score of the phase before it:
+ *
+ *  newMap, createRoomScheme, drawRooms, linkRegions, postProcess, initialize
+ *
+ * linkRooms and linkSpanning, the replacements of linkRegions in other GeneratorVersions, are
+ * compared against drawRooms the same way. Phases take microseconds, which is too short for
+ * preparing each call's map in a per-invocation setup outside the measured time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class GenerationBenchmark {
+    @Param({"80x30", "400x200", "1000x1000"})
+    public String size;
+
+    @Param({"123", "5197880843"})
+    public long seed;
+
+    private int width() {
+        return Integer.parseInt(size.substring(0, size.indexOf('x')));
+    }
+
+    private int height() {
+        return Integer.parseInt(size.substring(size.indexOf('x') + 1));
+    }
+
+    private Map newWorld() {
+        Map map = new Map(width(), height());
+        map.setRandom(seed);
+        return map;
+    }
+
+    /* Rooms of map, which must be new, placed and drawn as initialize() does. */
+    private static Map.Room[] drawnRooms(Map map) {
+        Map.Room[] rooms = map.createRoomScheme(RandomUtils.uniform(map.random, 25, 30));
+        map.drawRooms(rooms);
+        return rooms;
+    }
+
+    @Benchmark
+    public Map newMap() {
+        return newWorld();
+    }
+
+    @Benchmark
+    public Object createRoomScheme() {
+        Map map = newWorld();
+        return map.createRoomScheme(RandomUtils.uniform(map.random, 25, 30));
+    }
+
+    @Benchmark
+    public Map drawRooms() {
+        Map map = newWorld();
+        drawnRooms(map);
+        return map;
+    }
+
+    @Benchmark
+    public Map linkRegions() {
+        Map map = newWorld();
+        drawnRooms(map);
+        map.linkRegions();
+        return map;
+    }
+
+    @Benchmark
+    public Map linkRooms() {
+        Map map = newWorld();
+        map.linkRooms(drawnRooms(map));
+        return map;
+    }
+
+    @Benchmark
+    public Map linkSpanning() {
+        Map map = newWorld();
+        map.linkSpanning(drawnRooms(map), 0);
+        return map;
+    }
+
+    @Benchmark
+    public Map postProcess() {
+        Map map = newWorld();
+        drawnRooms(map);
+        map.linkRegions();
+        map.postProcess();
+        return map;
+    }
+
+    @Benchmark
+    public Object initialize() {
+        return newWorld().initialize();
+    }
+}
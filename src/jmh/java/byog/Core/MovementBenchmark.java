@@ -0,0 +1,60 @@
+package byog.Core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times one player move, in normal and ninja mode. The player wanders the world following a
+ * fixed random key sequence, so walls, coins and corridors are all hit along the way.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class MovementBenchmark {
+    private static final int KEYS = 1 << 12;
+
+    @Param({"80x30", "400x200", "1000x1000"})
+    public String size;
+
+    @Param({"123", "5197880843"})
+    public long seed;
+
+    private Map map;
+    private final char[] keys = new char[KEYS];
+    private int next;
+
+    @Setup
+    public void setup() {
+        int width = Integer.parseInt(size.substring(0, size.indexOf('x')));
+        int height = Integer.parseInt(size.substring(size.indexOf('x') + 1));
+        map = new Map(width, height);
+        map.setRandom(seed);
+        map.initialize();
+
+        Random random = new Random(seed);
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "wasd".charAt(random.nextInt(4));
+        }
+    }
+
+    @Benchmark
+    public Map control() {
+        map.control(keys[next++ & (KEYS - 1)]);
+        return map;
+    }
+
+    @Benchmark
+    public Map ninjaControl() {
+        map.ninjaControl(keys[next++ & (KEYS - 1)]);
+        return map;
+    }
+}
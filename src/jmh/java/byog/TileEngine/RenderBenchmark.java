@@ -0,0 +1,73 @@
+package byog.TileEngine;
+
+import byog.Core.Map;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times building a frame from a Map and drawing it: Map.getFloorTiles(), TETile.toString and a
+ * full TERenderer frame drawn into an offscreen image, so no window is needed, both from an
+ * array and straight from the map's WorldView.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class RenderBenchmark {
+    @Param({"80x30", "400x200"})
+    public String size;
+
+    @Param({"123"})
+    public long seed;
+
+    private Map map;
+    private TETile[][] frame;
+    private TERenderer renderer;
+    private BufferedImage image;
+
+    @Setup
+    public void setup() {
+        System.setProperty("java.awt.headless", "true");
+        int width = Integer.parseInt(size.substring(0, size.indexOf('x')));
+        int height = Integer.parseInt(size.substring(size.indexOf('x') + 1));
+        map = new Map(width, height);
+        map.setRandom(seed);
+        map.initialize();
+        frame = map.getFloorTiles();
+
+        renderer = new TERenderer();
+        image = new BufferedImage(width * TERenderer.TILE_SIZE, height * TERenderer.TILE_SIZE,
+                BufferedImage.TYPE_INT_ARGB);
+        renderer.renderFrame(frame, image);     // fill the tile atlas before measuring
+    }
+
+    @Benchmark
+    public TETile[][] getFloorTiles() {
+        return map.getFloorTiles();
+    }
+
+    @Benchmark
+    public String worldToString() {
+        return TETile.toString(frame);
+    }
+
+    @Benchmark
+    public BufferedImage renderFrame() {
+        renderer.renderFrame(frame, image);
+        return image;
+    }
+
+    @Benchmark
+    public BufferedImage renderView() {
+        renderer.renderFrame(map.view(), image);
+        return image;
+    }
+}
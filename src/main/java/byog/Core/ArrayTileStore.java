@@ -0,0 +1,50 @@
+package byog.Core;
+
+import java.util.Arrays;
+
+/**
+ * TileStore on the heap: one byte per tile in a flat array indexed by x + y * width.
+ */
+public class ArrayTileStore implements TileStore {
+    private final int width;
+    private final int height;
+    private final byte[] tiles;
+
+    public ArrayTileStore(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.tiles = new byte[Math.multiplyExact(width, height)];
+    }
+
+    @Override
+    public int width() {
+        return width;
+    }
+
+    @Override
+    public int height() {
+        return height;
+    }
+
+    @Override
+    public byte get(int x, int y) {
+        return tiles[x + y * width];
+    }
+
+    @Override
+    public void set(int x, int y, byte id) {
+        tiles[x + y * width] = id;
+    }
+
+    @Override
+    public void fillRow(int y, int x0, int x1, byte id) {
+        Arrays.fill(tiles, x0 + y * width, x1 + y * width, id);
+    }
+
+    /**
+     * @return the backing array itself, for code that scans every tile
+     */
+    byte[] array() {
+        return tiles;
+    }
+}
@@ -0,0 +1,205 @@
+package byog.Core;
+
+import byog.TileEngine.TETile;
+import byog.TileEngine.Tileset;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Headless world generator used to sweep large seed ranges offline. Every seed gets its own
+ * Map (and therefore its own Random), so seeds are generated independently on a fork-join pool
+ * and each world is handed to a Sink as soon as it is done. Results arrive in completion order,
+ * not seed order.
+ *
+ * Usage: java byog.Core.BatchGenerator fromSeed toSeed [threads] [text]
+ */
+public class BatchGenerator {
+    /* Seeds handled by one leaf task before it stops splitting. */
+    private static final int SEEDS_PER_TASK = 64;
+
+    private final int width;
+    private final int height;
+    private final boolean compact;
+    private final ForkJoinPool pool;
+
+    /**
+     * Receives generated worlds. Called concurrently from the worker threads.
+     */
+    public interface Sink {
+        void accept(Result result);
+    }
+
+    /**
+     * One generated world: its seed, its encoded tiles and a few counts.
+     */
+    public static class Result {
+        public final long seed;
+        public final String world;
+        public final int floors;
+        public final int grass;
+        public final int walls;
+        public final int coins;
+
+        Result(long seed, String world, int floors, int grass, int walls, int coins) {
+            this.seed = seed;
+            this.world = world;
+            this.floors = floors;
+            this.grass = grass;
+            this.walls = walls;
+            this.coins = coins;
+        }
+    }
+
+    /**
+     * @param width width of each world in tiles
+     * @param height height of each world in tiles
+     * @param compact true to encode worlds with encode(), false for TETile.toString
+     * @param parallelism number of worker threads
+     */
+    public BatchGenerator(int width, int height, boolean compact, int parallelism) {
+        this.width = width;
+        this.height = height;
+        this.compact = compact;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Generates every seed in [fromSeed, toSeed) and blocks until all of them reached the sink.
+     */
+    public void generate(long fromSeed, long toSeed, Sink sink) {
+        if (toSeed < fromSeed) {
+            throw new IllegalArgumentException("empty seed range: " + fromSeed + ".." + toSeed);
+        }
+        pool.invoke(new SweepTask(fromSeed, toSeed, sink));
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private class SweepTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long lo;
+        private final long hi;
+        private final Sink sink;
+
+        SweepTask(long lo, long hi, Sink sink) {
+            this.lo = lo;
+            this.hi = hi;
+            this.sink = sink;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= SEEDS_PER_TASK) {
+                for (long seed = lo; seed < hi; seed++) {
+                    sink.accept(generateOne(seed));
+                }
+                return;
+            }
+            long mid = lo + (hi - lo) / 2;
+            invokeAll(new SweepTask(lo, mid, sink), new SweepTask(mid, hi, sink));
+        }
+    }
+
+    Result generateOne(long seed) {
+        Map map = new Map(width, height);
+        map.setRandom(seed);
+        map.initialize();
+        TETile[][] tiles = map.getFloorTiles();
+
+        int floors = 0;
+        int grass = 0;
+        int walls = 0;
+        int coins = 0;
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                TETile t = tiles[x][y];
+                if (t == Tileset.FLOOR) {
+                    floors++;
+                } else if (t == Tileset.GRASS) {
+                    grass++;
+                } else if (t == Tileset.WALL) {
+                    walls++;
+                } else if (t == Tileset.COIN) {
+                    coins++;
+                }
+            }
+        }
+
+        String world = compact ? encode(tiles) : TETile.toString(tiles);
+        return new Result(seed, world, floors, grass, walls, coins);
+    }
+
+    /**
+     * Run-length encodes the characters of a world, top row first like TETile.toString.
+     * Each run is written as its length followed by the character, rows are separated by '/'.
+     */
+    public static String encode(TETile[][] world) {
+        int width = world.length;
+        int height = world[0].length;
+        StringBuilder sb = new StringBuilder();
+
+        for (int y = height - 1; y >= 0; y -= 1) {
+            int x = 0;
+            while (x < width) {
+                char c = world[x][y].character();
+                int run = 1;
+                while (x + run < width && world[x + run][y].character() == c) {
+                    run++;
+                }
+                sb.append(run).append(c);
+                x += run;
+            }
+            sb.append('/');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Sink writing one tab separated line per world: seed, floors, grass, walls, coins, world.
+     * Text worlds span several lines, so they are followed by an empty line.
+     */
+    public static Sink lineSink(Writer out) {
+        return result -> {
+            synchronized (out) {
+                try {
+                    out.write(result.seed + "\t" + result.floors + "\t" + result.grass + "\t"
+                            + result.walls + "\t" + result.coins + "\t" + result.world + "\n");
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: BatchGenerator fromSeed toSeed [threads] [text]");
+            System.exit(0);
+        }
+        long from = Long.parseLong(args[0]);
+        long to = Long.parseLong(args[1]);
+        int threads = args.length > 2 ? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors();
+        boolean compact = args.length <= 3 || !args[3].equalsIgnoreCase("text");
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8),
+                1 << 16);
+        BatchGenerator generator = new BatchGenerator(Game.WIDTH, Game.HEIGHT, compact, threads);
+        try {
+            generator.generate(from, to, lineSink(out));
+        } finally {
+            generator.shutdown();
+            out.flush();
+        }
+    }
+}
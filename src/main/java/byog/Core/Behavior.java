@@ -0,0 +1,22 @@
+package byog.Core;
+
+/**
+ * Decides how entities move, one tick at a time. An EntitySystem first calls prepare once per
+ * tick on the ticking thread, then update for every entity using the behavior, possibly from
+ * several threads at once. update sees every entity where it was at the start of the tick.
+ */
+public interface Behavior {
+    /**
+     * Computes whatever all entities with this behavior share in a tick, e.g. a distance field
+     * from the EntitySystem's Pathfinder, which may only be used here.
+     */
+    default void prepare(EntitySystem world, long tick) {
+    }
+
+    /**
+     * Picks the move of entity id. May change the target and state of entity id, but nothing
+     * else, and must not use the Pathfinder.
+     * @return 'w', 'a', 's' or 'd' to move one cell, or 0 to stay; moves into walls are ignored
+     */
+    char update(EntitySystem world, int id, long tick);
+}
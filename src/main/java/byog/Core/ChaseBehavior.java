@@ -0,0 +1,47 @@
+package byog.Core;
+
+/**
+ * Heads for the player along a shortest path. All chasers share one distance field to the
+ * player per tick. A chaser in state FRIGHTENED runs away instead, taking the step that
+ * increases its distance to the player the most.
+ */
+public class ChaseBehavior implements Behavior {
+    public static final int FRIGHTENED = 1;
+
+    private Pathfinder.DistanceField field;
+
+    @Override
+    public void prepare(EntitySystem world, long tick) {
+        field = world.pathfinder().distanceField(world.playerX(), world.playerY());
+    }
+
+    @Override
+    public char update(EntitySystem world, int id, long tick) {
+        Entities entities = world.entities();
+        int x = entities.x[id];
+        int y = entities.y[id];
+        entities.targetX[id] = world.playerX();
+        entities.targetY[id] = world.playerY();
+        if (entities.state[id] == FRIGHTENED) {
+            return flee(world, x, y);
+        }
+        return field.nextStep(x, y);
+    }
+
+    private char flee(EntitySystem world, int x, int y) {
+        char best = 0;
+        int bestDistance = field.distance(x, y);
+        if (bestDistance == Pathfinder.UNREACHABLE) {
+            return 0;
+        }
+        for (char key : EntitySystem.MOVES) {
+            int nx = x + EntitySystem.dx(key);
+            int ny = y + EntitySystem.dy(key);
+            if (world.isWalkable(nx, ny) && field.distance(nx, ny) > bestDistance) {
+                best = key;
+                bestDistance = field.distance(nx, ny);
+            }
+        }
+        return best;
+    }
+}
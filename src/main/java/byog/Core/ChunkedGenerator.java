@@ -0,0 +1,362 @@
+package byog.Core;
+
+import byog.TileEngine.TileRegistry;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Generates very large worlds on all cores. The world is cut into chunks of about chunkSize x
+ * chunkSize tiles, and every chunk gets its own generators, seeded from the master seed and the
+ * chunk's index only. Generation runs in four phases:
+ *
+ *  1. rooms: every chunk places rooms inside its bounds and links them with corridors, in
+ *     parallel;
+ *  2. stitching: every chunk is linked to its right and upper neighbour, serially in chunk
+ *     order;
+ *  3. walls, decoration and coins: in parallel, every chunk writing only its own cells;
+ *  4. door and player, as Map.drawDoor.
+ *
+ * Since no phase depends on which thread ran which chunk, a seed gives the same world whatever
+ * the parallelism. The worlds are not those of Map.initialize(): rooms are as dense, but linked
+ * in a snake order within each chunk instead of by region, and grass is drawn with one uniform
+ * number per floor instead of a gaussian. Map.initialize() stays the generator of seeds typed by
+ * players.
+ *
+ * Ex:
+ *      Map map = new Map(10000, 10000);
+ *      map.setCoinCount(100000);
+ *      new ChunkedGenerator(ChunkedGenerator.DEFAULT_CHUNK, threads).generate(map, seed);
+ *
+ * Usage: java byog.Core.ChunkedGenerator width height seed [threads] [file]
+ */
+public class ChunkedGenerator {
+    public static final int DEFAULT_CHUNK = 128;
+    /* Smallest chunk or world side: a room and its walls need 13 tiles. */
+    private static final int MIN_CHUNK = 16;
+    /* Map.initialize() places 25 to 30 rooms on 80 x 30 tiles; chunks keep that density. */
+    private static final int ROOM_AREA = 80 * 30;
+    /* Rooms are linked band by band, BAND rows high, alternating left and right. */
+    private static final int BAND = 16;
+    /* Chance that a gaussian exceeds 0.8, the grass rule of Map.initialize(). */
+    private static final double GRASS_CHANCE = 0.2119;
+
+    /* Phases, mixed into the seeds so each phase of a chunk draws from its own generator. */
+    private static final int ROOMS = 0;
+    private static final int STITCH = 1;
+    private static final int DETAILS = 2;
+
+    private final int chunkSize;
+    private final ForkJoinPool pool;
+    private GameRandom.Kind kind = GameRandom.Kind.XOSHIRO256;
+
+    /**
+     * @param chunkSize side of a chunk in tiles, at least 16; chunks on the world's edges may be
+     *                  up to twice as large
+     * @param parallelism number of worker threads
+     */
+    public ChunkedGenerator(int chunkSize, int parallelism) {
+        this(chunkSize, new ForkJoinPool(parallelism));
+    }
+
+    public ChunkedGenerator(int chunkSize, ForkJoinPool pool) {
+        if (chunkSize < MIN_CHUNK) {
+            throw new IllegalArgumentException("chunk size must be at least " + MIN_CHUNK + ": "
+                    + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        this.pool = pool;
+    }
+
+    /**
+     * Sets the generator every chunk and phase gets; GameRandom.Kind.XOSHIRO256 unless changed.
+     * The kind is part of what a seed means: another kind gives another world.
+     */
+    public void setRandomKind(GameRandom.Kind kind) {
+        this.kind = kind;
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Generates a world from seed into map, whose tiles must all be TileRegistry.NOTHING, and
+     * places the player and map's coin count of coins.
+     * @throws IllegalArgumentException if the map is smaller than 16 x 16
+     */
+    public void generate(Map map, long seed) {
+        if (map.width() < MIN_CHUNK || map.height() < MIN_CHUNK) {
+            throw new IllegalArgumentException("world too small for chunked generation: "
+                    + map.width() + "x" + map.height());
+        }
+        Generation g = new Generation(map, seed);
+        pool.invoke(new ChunkTask(g, ROOMS, 0, g.chunks));
+        g.stitch();
+        pool.invoke(new ChunkTask(g, DETAILS, 0, g.chunks));
+
+        int coins = 0;
+        for (int[] cells : g.coinCells) {
+            coins += cells.length;
+        }
+        int[] all = new int[coins];
+        int n = 0;
+        for (int[] cells : g.coinCells) {
+            System.arraycopy(cells, 0, all, n, cells.length);
+            n += cells.length;
+        }
+        map.tilesChanged();
+        map.drawDoor();
+        map.setCoinCells(all);
+        map.setRandom(seed, kind);
+    }
+
+    /**
+     * @return a SplitMix64 mix of seed, chunk and phase
+     */
+    static long subSeed(long seed, int chunk, int phase) {
+        return GameRandom.mix(seed + (chunk + 1) * GameRandom.GOLDEN_GAMMA
+                + (phase + 1) * 0xD1B54A32D192ED03L);
+    }
+
+    private class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Generation g;
+        private final int phase;
+        private final int lo;
+        private final int hi;
+
+        ChunkTask(Generation g, int phase, int lo, int hi) {
+            this.g = g;
+            this.phase = phase;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo == 1) {
+                if (phase == ROOMS) {
+                    g.rooms(lo);
+                } else {
+                    g.details(lo);
+                }
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new ChunkTask(g, phase, lo, mid), new ChunkTask(g, phase, mid, hi));
+        }
+    }
+
+    /* State of one generate() call, shared by its tasks. */
+    private final class Generation {
+        private final Map map;
+        private final TileStore tiles;
+        private final long seed;
+        private final int width;
+        private final int height;
+        private final int chunksX;
+        private final int chunksY;
+        private final int chunks;
+        private final int coinCount;
+        /* Rooms of every chunk, written in phase 1, read in phase 2. */
+        private final Map.Room[][] rooms;
+        /* Coins of every chunk, written in phase 3. */
+        private final int[][] coinCells;
+
+        Generation(Map map, long seed) {
+            this.map = map;
+            this.tiles = map.tileStore();
+            this.seed = seed;
+            this.width = map.width();
+            this.height = map.height();
+            this.chunksX = Math.max(1, width / chunkSize);
+            this.chunksY = Math.max(1, height / chunkSize);
+            this.chunks = chunksX * chunksY;
+            this.coinCount = map.coinCount();
+            this.rooms = new Map.Room[chunks][];
+            this.coinCells = new int[chunks][];
+        }
+
+        /* Chunk bounds: chunk cx spans x0(cx) inclusive to x0(cx + 1) exclusive. */
+        private int x0(int cx) {
+            return (int) ((long) cx * width / chunksX);
+        }
+
+        private int y0(int cy) {
+            return (int) ((long) cy * height / chunksY);
+        }
+
+        /* Places and links the rooms of a chunk, keeping them and their walls inside it. */
+        void rooms(int chunk) {
+            int cx = chunk % chunksX;
+            int cy = chunk / chunksX;
+            int x0 = x0(cx);
+            int x1 = x0(cx + 1);
+            int y0 = y0(cy);
+            int y1 = y0(cy + 1);
+            Random random = GameRandom.create(kind, subSeed(seed, chunk, ROOMS));
+
+            long area = (long) (x1 - x0) * (y1 - y0);
+            int roomNum = (int) Math.max(1, area * RandomUtils.uniform(random, 25, 30) / ROOM_AREA);
+            Map.Room[] chunkRooms = new Map.Room[roomNum];
+            long[] order = new long[roomNum];
+            for (int i = 0; i < roomNum; i++) {
+                int x = RandomUtils.uniform(random, x0 + 1, x1 - 11);
+                int y = RandomUtils.uniform(random, y0 + 1, y1 - 11);
+                Map.Room room = new Map.Room(RandomUtils.uniform(random, 2, 10),
+                        RandomUtils.uniform(random, 2, 10), x, y);
+                chunkRooms[i] = room;
+                for (int row = y; row < y + room.height; row++) {
+                    tiles.fillRow(row, x, x + room.width, TileRegistry.FLOOR);
+                }
+
+                int band = (y - y0) / BAND;
+                int along = band % 2 == 0 ? x - x0 : x1 - x;
+                order[i] = (long) band << 42 | (long) along << 21 | i;
+            }
+
+            Arrays.sort(order);
+            for (int i = 1; i < roomNum; i++) {
+                Map.Room a = chunkRooms[(int) (order[i - 1] & 0x1FFFFF)];
+                Map.Room b = chunkRooms[(int) (order[i] & 0x1FFFFF)];
+                link(random, a, b);
+            }
+            rooms[chunk] = chunkRooms;
+        }
+
+        /* Links every chunk to its right and upper neighbours. */
+        void stitch() {
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                Random random = GameRandom.create(kind, subSeed(seed, chunk, STITCH));
+                Map.Room[] own = rooms[chunk];
+                if (chunk % chunksX < chunksX - 1) {
+                    Map.Room[] right = rooms[chunk + 1];
+                    link(random, own[RandomUtils.uniform(random, own.length)],
+                            right[RandomUtils.uniform(random, right.length)]);
+                }
+                if (chunk / chunksX < chunksY - 1) {
+                    Map.Room[] up = rooms[chunk + chunksX];
+                    link(random, own[RandomUtils.uniform(random, own.length)],
+                            up[RandomUtils.uniform(random, up.length)]);
+                }
+            }
+        }
+
+        /* Digs a corridor between random cells of a and b: up or down from a, then across. */
+        private void link(Random random, Map.Room a, Map.Room b) {
+            int ax = a.X + RandomUtils.uniform(random, a.width);
+            int ay = a.Y + RandomUtils.uniform(random, a.height);
+            int bx = b.X + RandomUtils.uniform(random, b.width);
+            int by = b.Y + RandomUtils.uniform(random, b.height);
+            for (int y = Math.min(ay, by); y <= Math.max(ay, by); y++) {
+                tiles.set(ax, y, TileRegistry.FLOOR);
+            }
+            tiles.fillRow(by, Math.min(ax, bx), Math.max(ax, bx) + 1, TileRegistry.FLOOR);
+        }
+
+        /*
+         * Walls, grass and coins of a chunk. Cells of neighbouring chunks are only read, to see
+         * whether they are floor or grass, which no longer changes in this phase.
+         */
+        void details(int chunk) {
+            int cx = chunk % chunksX;
+            int cy = chunk / chunksX;
+            int x0 = x0(cx);
+            int x1 = x0(cx + 1);
+            int y0 = y0(cy);
+            int y1 = y0(cy + 1);
+            Random random = GameRandom.create(kind, subSeed(seed, chunk, DETAILS));
+
+            for (int y = y0; y < y1; y++) {
+                for (int x = x0; x < x1; x++) {
+                    if (tiles.get(x, y) == TileRegistry.NOTHING && nextToFloor(x, y)) {
+                        tiles.set(x, y, TileRegistry.WALL);
+                    }
+                }
+            }
+
+            int[] candidates = new int[(x1 - x0) * (y1 - y0)];
+            int n = 0;
+            for (int y = y0; y < y1; y++) {
+                for (int x = x0; x < x1; x++) {
+                    byte id = tiles.get(x, y);
+                    if (id == TileRegistry.FLOOR && random.nextDouble() < GRASS_CHANCE) {
+                        tiles.set(x, y, TileRegistry.GRASS);
+                        id = TileRegistry.GRASS;
+                    }
+                    if (id == TileRegistry.FLOOR || id == TileRegistry.GRASS) {
+                        candidates[n++] = x + y * width;
+                    }
+                }
+            }
+
+            // The chunk's share of the coins, so that the shares add up to coinCount
+            int quota = (int) ((long) coinCount * (chunk + 1) / chunks
+                    - (long) coinCount * chunk / chunks);
+            quota = Math.min(quota, n);
+            for (int i = 0; i < quota; i++) {
+                int j = i + RandomUtils.uniform(random, n - i);
+                int swap = candidates[i];
+                candidates[i] = candidates[j];
+                candidates[j] = swap;
+            }
+            coinCells[chunk] = Arrays.copyOf(candidates, quota);
+        }
+
+        private boolean nextToFloor(int x, int y) {
+            for (int dy = -1; dy <= 1; dy++) {
+                int ny = y + dy;
+                if (ny < 0 || ny >= height) {
+                    continue;
+                }
+                for (int dx = -1; dx <= 1; dx++) {
+                    int nx = x + dx;
+                    if (nx >= 0 && nx < width) {
+                        byte id = tiles.get(nx, ny);
+                        if (id == TileRegistry.FLOOR || id == TileRegistry.GRASS) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("Usage: ChunkedGenerator width height seed [threads] [file]");
+            System.exit(0);
+        }
+        int width = Integer.parseInt(args[0]);
+        int height = Integer.parseInt(args[1]);
+        long seed = Long.parseLong(args[2]);
+        int threads = args.length > 3 ? Integer.parseInt(args[3])
+                : Runtime.getRuntime().availableProcessors();
+
+        MappedTileStore file = args.length > 4
+                ? MappedTileStore.create(Paths.get(args[4]), width, height) : null;
+        Map map = file != null ? new Map(file) : new Map(width, height);
+        map.setCoinCount((int) Math.min(Integer.MAX_VALUE, (long) width * height / 1000));
+
+        ChunkedGenerator generator = new ChunkedGenerator(DEFAULT_CHUNK, threads);
+        long start = System.nanoTime();
+        try {
+            generator.generate(map, seed);
+        } finally {
+            generator.shutdown();
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println(width + "x" + height + " world from seed " + seed + " in " + millis
+                + " ms on " + threads + " threads, " + map.coinsLeft() + " coins");
+        if (file != null) {
+            file.close();
+        }
+    }
+}
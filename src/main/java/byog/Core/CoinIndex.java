@@ -0,0 +1,214 @@
+package byog.Core;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * The coins lying on a map, as sorted arrays of their cells, so that it takes memory for the
+ * coins and not for every tile of the map. One array numbers the cells x + y * width, the other
+ * y + x * height, so the coins on a stretch of a row or of a column are both a contiguous range
+ * of one array, found with a binary search.
+ *
+ * Looking up and removing a coin take O(log n) for n coins. Removing only marks the entries as
+ * gone; adding rebuilds both arrays without them, so coins are best added in bulk with addAll
+ * or place. next() walks the coins in cell order.
+ */
+class CoinIndex {
+    private static final int[] NONE = new int[0];
+
+    private final int width;
+    private final int height;
+    /* Coin cells x + y * width in ascending order, and the entries of coins since removed. */
+    private int[] byRow = NONE;
+    private final BitSet rowGone = new BitSet();
+    /* The same coins at y + x * height. */
+    private int[] byColumn = NONE;
+    private final BitSet columnGone = new BitSet();
+    private int size;
+
+    CoinIndex(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    private int columnCell(int cell) {
+        return cell / width + (cell % width) * height;
+    }
+
+    private int rowCell(int columnCell) {
+        return columnCell / height + (columnCell % height) * width;
+    }
+
+    /* Index of the first entry of sorted that is not less than value. */
+    private static int lowerBound(int[] sorted, int value) {
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /* Index of the coin at cell in byRow, or -1 if there is none. */
+    private int rowEntry(int cell) {
+        int i = lowerBound(byRow, cell);
+        return i < byRow.length && byRow[i] == cell && !rowGone.get(i) ? i : -1;
+    }
+
+    /** @return number of coins */
+    int size() {
+        return size;
+    }
+
+    boolean contains(int cell) {
+        return rowEntry(cell) >= 0;
+    }
+
+    /**
+     * Puts a coin at cell. Takes O(n); use addAll for more than a few coins.
+     */
+    void add(int cell) {
+        addAll(new int[] {cell}, 1);
+    }
+
+    /**
+     * Puts coins at the first count of cells, which may repeat and may already hold coins.
+     */
+    void addAll(int[] cells, int count) {
+        int[] merged = new int[size + count];
+        int n = 0;
+        for (int i = rowGone.nextClearBit(0); i < byRow.length; i = rowGone.nextClearBit(i + 1)) {
+            merged[n++] = byRow[i];
+        }
+        System.arraycopy(cells, 0, merged, n, count);
+        Arrays.sort(merged);
+        n = 0;
+        for (int cell : merged) {
+            if (n == 0 || merged[n - 1] != cell) {
+                merged[n++] = cell;
+            }
+        }
+
+        byRow = Arrays.copyOf(merged, n);
+        byColumn = new int[n];
+        for (int i = 0; i < n; i++) {
+            byColumn[i] = columnCell(byRow[i]);
+        }
+        Arrays.sort(byColumn);
+        rowGone.clear();
+        columnGone.clear();
+        size = n;
+    }
+
+    /**
+     * @return true if there was a coin at cell
+     */
+    boolean remove(int cell) {
+        int i = rowEntry(cell);
+        if (i < 0) {
+            return false;
+        }
+        rowGone.set(i);
+        columnGone.set(lowerBound(byColumn, columnCell(cell)));
+        size--;
+        return true;
+    }
+
+    /**
+     * Removes the coins on row y from x0 to x1, both included.
+     * @return number of coins removed
+     */
+    int removeInRow(int y, int x0, int x1) {
+        int to = x1 + y * width + 1;
+        int removed = 0;
+        for (int i = rowGone.nextClearBit(lowerBound(byRow, x0 + y * width));
+                i < byRow.length && byRow[i] < to; i = rowGone.nextClearBit(i + 1)) {
+            rowGone.set(i);
+            columnGone.set(lowerBound(byColumn, columnCell(byRow[i])));
+            removed++;
+        }
+        size -= removed;
+        return removed;
+    }
+
+    /**
+     * Removes the coins on column x from y0 to y1, both included.
+     * @return number of coins removed
+     */
+    int removeInColumn(int x, int y0, int y1) {
+        int to = y1 + x * height + 1;
+        int removed = 0;
+        for (int i = columnGone.nextClearBit(lowerBound(byColumn, y0 + x * height));
+                i < byColumn.length && byColumn[i] < to; i = columnGone.nextClearBit(i + 1)) {
+            columnGone.set(i);
+            rowGone.set(lowerBound(byRow, rowCell(byColumn[i])));
+            removed++;
+        }
+        size -= removed;
+        return removed;
+    }
+
+    void clear() {
+        byRow = NONE;
+        byColumn = NONE;
+        rowGone.clear();
+        columnGone.clear();
+        size = 0;
+    }
+
+    /**
+     * @return the first cell at or after from holding a coin, or -1 if there is none.
+     *         Ex: for (int c = coins.next(0); c >= 0; c = coins.next(c + 1))
+     */
+    int next(int from) {
+        int i = rowGone.nextClearBit(lowerBound(byRow, from));
+        return i < byRow.length ? byRow[i] : -1;
+    }
+
+    /**
+     * Puts coins on count of the candidate cells, chosen the way the original list-based
+     * placement did: each draw takes random.nextInt(remaining) as a position in the list of
+     * candidates not drawn yet. Positions are resolved with a Fenwick tree over the remaining
+     * candidates instead of removing from a list, so a draw costs O(log n) instead of O(n) and
+     * a seed still places its coins exactly where it always has.
+     */
+    void place(int[] candidates, int count, Random random) {
+        int n = candidates.length;
+        count = Math.min(count, n);
+        // tree[i] counts the remaining candidates in (i - lowbit(i), i], 1-based
+        int[] tree = new int[n + 1];
+        for (int i = 1; i <= n; i++) {
+            tree[i]++;
+            int parent = i + (i & -i);
+            if (parent <= n) {
+                tree[parent] += tree[i];
+            }
+        }
+        int topBit = Integer.highestOneBit(Math.max(n, 1));
+
+        int[] cells = new int[count];
+        for (int drawn = 0; drawn < count; drawn++) {
+            int rank = random.nextInt(n - drawn);
+            // Find the candidate with rank remaining candidates before it
+            int pos = 0;
+            for (int step = topBit; step > 0; step >>= 1) {
+                int next = pos + step;
+                if (next <= n && tree[next] <= rank) {
+                    pos = next;
+                    rank -= tree[next];
+                }
+            }
+            cells[drawn] = candidates[pos];
+            for (int i = pos + 1; i <= n; i += i & -i) {
+                tree[i]--;
+            }
+        }
+        addAll(cells, count);
+    }
+}
@@ -0,0 +1,161 @@
+package byog.Core;
+
+import java.util.Arrays;
+
+/**
+ * An input string of Game.playWithInputString, compiled in one pass into what it asks for: a
+ * start key, a seed and a list of operations. Runs of the same move are collapsed into one
+ * operation, so executing a plan with Map.move takes one call per run instead of one per key.
+ *
+ * The grammar is the one playWithInputString always had:
+ *  - the first character, lower-cased, is the start key ('n', 'l' or 'e');
+ *  - all digits anywhere in the string, joined, are the seed;
+ *  - the other characters after the first are keys, case-insensitive; 'w', 'a', 's' and 'd'
+ *    move, ':' followed by 'q' saves and ends the plan, ':' followed by anything else swallows
+ *    that character, and everything else is ignored.
+ *
+ * Operations are packed in ints as key | count << 8, with key one of 'w', 'a', 's', 'd' or
+ * SAVE.
+ */
+public class CommandPlan {
+    /** Key of the save-and-quit operation. */
+    public static final char SAVE = ':';
+    private static final int MAX_RUN = (1 << 23) - 1;
+
+    private final char start;
+    private final boolean hasSeed;
+    private final long seed;
+    private final int[] ops;
+    private final int moves;
+
+    private CommandPlan(char start, boolean hasSeed, long seed, int[] ops, int moves) {
+        this.start = start;
+        this.hasSeed = hasSeed;
+        this.seed = seed;
+        this.ops = ops;
+        this.moves = moves;
+    }
+
+    /**
+     * @throws IllegalArgumentException if input is empty or its seed doesn't fit in a long
+     */
+    public static CommandPlan compile(String input) {
+        if (input.isEmpty()) {
+            throw new IllegalArgumentException("empty input");
+        }
+        return compile(input, Character.toLowerCase(input.charAt(0)), 1);
+    }
+
+    /**
+     * Compiles keys typed in a game already running: like compile, but without a start key,
+     * so the first character is a key too. start() is then 0.
+     */
+    public static CommandPlan compileKeys(String keys) {
+        return compile(keys, (char) 0, 0);
+    }
+
+    private static CommandPlan compile(String input, char start, int firstKey) {
+        boolean hasSeed = false;
+        long seed = 0;
+        int[] ops = new int[16];
+        int count = 0;
+        int moves = 0;
+        boolean colon = false;
+        boolean quit = false;
+
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c >= '0' && c <= '9') {
+                int digit = c - '0';
+                if (seed > (Long.MAX_VALUE - digit) / 10) {
+                    throw new IllegalArgumentException("seed too large: "
+                            + input.replaceAll("[^0-9]", ""));
+                }
+                seed = seed * 10 + digit;
+                hasSeed = true;
+                continue;
+            }
+            if (i < firstKey || quit) {
+                continue;   // the start key; after a save only digits still count
+            }
+            c = Character.toLowerCase(c);
+            if (colon) {
+                colon = false;
+                if (c == 'q') {
+                    ops = append(ops, count++, SAVE);
+                    quit = true;
+                }
+                continue;
+            }
+            if (c == ':') {
+                colon = true;
+            } else if (c == 'w' || c == 'a' || c == 's' || c == 'd') {
+                moves++;
+                int last = count > 0 ? ops[count - 1] : 0;
+                if ((last & 0xFF) == c && (last >>> 8) < MAX_RUN) {
+                    ops[count - 1] += 1 << 8;
+                } else {
+                    ops = append(ops, count++, c | 1 << 8);
+                }
+            }
+        }
+        return new CommandPlan(start, hasSeed, seed, Arrays.copyOf(ops, count), moves);
+    }
+
+    private static int[] append(int[] ops, int index, int op) {
+        if (index == ops.length) {
+            ops = Arrays.copyOf(ops, ops.length * 2);
+        }
+        ops[index] = op;
+        return ops;
+    }
+
+    /** @return the lower-cased first character */
+    public char start() {
+        return start;
+    }
+
+    /** @return true if the input has any digits */
+    public boolean hasSeed() {
+        return hasSeed;
+    }
+
+    /** @return the seed, 0 when there is none */
+    public long seed() {
+        return seed;
+    }
+
+    /** @return number of operations */
+    public int size() {
+        return ops.length;
+    }
+
+    /** @return key of operation i: 'w', 'a', 's', 'd' or SAVE */
+    public char key(int i) {
+        return (char) (ops[i] & 0xFF);
+    }
+
+    /** @return how many times operation i repeats its key */
+    public int count(int i) {
+        return ops[i] >>> 8;
+    }
+
+    /** @return total number of moves in the plan */
+    public int moves() {
+        return moves;
+    }
+
+    /**
+     * Applies the moves to map, run by run, up to the first SAVE.
+     * @return the index of the SAVE operation, or size() if there is none
+     */
+    public int run(Map map) {
+        for (int i = 0; i < ops.length; i++) {
+            if (key(i) == SAVE) {
+                return i;
+            }
+            map.move(key(i), count(i));
+        }
+        return ops.length;
+    }
+}
@@ -0,0 +1,57 @@
+package byog.Core;
+
+import java.util.Arrays;
+
+/**
+ * TileStore reading from an array it shares with others, e.g. the worlds of a WorldCache. The
+ * array is copied on the first write, so the others never see the change.
+ */
+class CopyOnWriteTileStore implements TileStore {
+    private final int width;
+    private final int height;
+    private byte[] tiles;
+    private boolean shared = true;
+
+    /**
+     * @param tiles tile ids indexed by x + y * width, never written through this store
+     */
+    CopyOnWriteTileStore(int width, int height, byte[] tiles) {
+        this.width = width;
+        this.height = height;
+        this.tiles = tiles;
+    }
+
+    @Override
+    public int width() {
+        return width;
+    }
+
+    @Override
+    public int height() {
+        return height;
+    }
+
+    @Override
+    public byte get(int x, int y) {
+        return tiles[x + y * width];
+    }
+
+    @Override
+    public void set(int x, int y, byte id) {
+        own();
+        tiles[x + y * width] = id;
+    }
+
+    @Override
+    public void fillRow(int y, int x0, int x1, byte id) {
+        own();
+        Arrays.fill(tiles, x0 + y * width, x1 + y * width, id);
+    }
+
+    private void own() {
+        if (shared) {
+            tiles = tiles.clone();
+            shared = false;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package byog.Core;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Decides which groups of touching rooms (see RoomPlacer) a corridor links, so that every
+ * group is reached with short corridors. Each group is linked to its NEIGHBOURS nearest groups
+ * in a candidate graph, and a minimum spanning tree of that graph is taken with Kruskal's
+ * algorithm, weighing a link by the gap between the two closest rooms of the groups. Candidate
+ * links left out of the tree can be added back at random to make cycles, so the world has fewer
+ * dead ends.
+ *
+ * The candidate graph is built by comparing every pair of groups, which is cheap for the few
+ * dozen groups of a Map but quadratic in their number.
+ */
+class CorridorPlanner {
+    static final int NEIGHBOURS = 4;
+
+    private final double loopChance;
+
+    /**
+     * @param loopChance chance that a candidate link outside the spanning tree is added too
+     */
+    CorridorPlanner(double loopChance) {
+        this.loopChance = loopChance;
+    }
+
+    /**
+     * Plans the links between groups, each group given as indices into rooms. A link joins the
+     * two closest rooms of its groups. Random numbers are only drawn for cycles.
+     * @return the linked rooms, two room indices per link: the spanning tree's links from the
+     *         shortest up, then the cycles'
+     */
+    int[] plan(Map.Room[] rooms, int[][] groups, Random random) {
+        int n = groups.length;
+        if (n < 2) {
+            return new int[0];
+        }
+        double[] cx = new double[n];
+        double[] cy = new double[n];
+        for (int g = 0; g < n; g++) {
+            double area = 0;
+            for (int r : groups[g]) {
+                Map.Room room = rooms[r];
+                double a = room.width * room.height;
+                cx[g] += (room.X + room.width / 2.0) * a;
+                cy[g] += (room.Y + room.height / 2.0) * a;
+                area += a;
+            }
+            cx[g] /= area;
+            cy[g] /= area;
+        }
+
+        long[] candidates = nearestNeighbours(cx, cy, Math.min(NEIGHBOURS, n - 1));
+        int[] parent = new int[n];
+        int[] links = new int[2 * n];
+        int count = kruskal(rooms, groups, candidates, parent, links, 0);
+        if (count < n - 1) {
+            // The nearest neighbours left some clusters apart; any pair of groups may link them
+            long[] all = new long[n * (n - 1) / 2];
+            int i = 0;
+            for (int a = 0; a < n; a++) {
+                for (int b = a + 1; b < n; b++) {
+                    all[i++] = (long) a << 32 | b;
+                }
+            }
+            count = kruskal(rooms, groups, all, parent, links, count);
+        }
+
+        if (loopChance > 0) {
+            for (long edge : candidates) {
+                int[] pair = closestRooms(rooms, groups[(int) (edge >>> 32)], groups[(int) edge]);
+                if (!isLinked(links, count, pair) && random.nextDouble() < loopChance) {
+                    if (2 * count + 2 > links.length) {
+                        links = Arrays.copyOf(links, links.length * 2);
+                    }
+                    links[2 * count] = pair[0];
+                    links[2 * count + 1] = pair[1];
+                    count++;
+                }
+            }
+        }
+        return Arrays.copyOf(links, 2 * count);
+    }
+
+    /* Links between each group and its k nearest by centroid, as a << 32 | b with a < b. */
+    private static long[] nearestNeighbours(double[] cx, double[] cy, int k) {
+        int n = cx.length;
+        long[] edges = new long[n * k];
+        int count = 0;
+        double[] distance = new double[n];
+        for (int a = 0; a < n; a++) {
+            for (int b = 0; b < n; b++) {
+                double dx = cx[a] - cx[b];
+                double dy = cy[a] - cy[b];
+                distance[b] = b == a ? Double.POSITIVE_INFINITY : dx * dx + dy * dy;
+            }
+            // k rounds of picking the nearest group left, the lowest index on ties
+            for (int j = 0; j < k; j++) {
+                int nearest = a == 0 ? 1 : 0;
+                for (int b = 0; b < n; b++) {
+                    if (distance[b] < distance[nearest]) {
+                        nearest = b;
+                    }
+                }
+                distance[nearest] = Double.POSITIVE_INFINITY;
+                edges[count++] = (long) Math.min(a, nearest) << 32 | Math.max(a, nearest);
+            }
+        }
+        Arrays.sort(edges, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || edges[unique - 1] != edges[i]) {
+                edges[unique++] = edges[i];
+            }
+        }
+        return Arrays.copyOf(edges, unique);
+    }
+
+    /*
+     * Adds the links of the minimum spanning forest of edges to links, starting at link count,
+     * with parent as the union-find of groups; count == 0 starts a new one.
+     * Returns the new number of links.
+     */
+    private static int kruskal(Map.Room[] rooms, int[][] groups, long[] edges, int[] parent,
+                               int[] links, int count) {
+        if (count == 0) {
+            for (int i = 0; i < parent.length; i++) {
+                parent[i] = i;
+            }
+        }
+        // Sort by gap, then by edge, so ties are broken the same way every time
+        long[] weighted = new long[edges.length];
+        int[][] pairs = new int[edges.length][];
+        for (int i = 0; i < edges.length; i++) {
+            pairs[i] = closestRooms(rooms, groups[(int) (edges[i] >>> 32)], groups[(int) edges[i]]);
+            weighted[i] = (long) gap(rooms[pairs[i][0]], rooms[pairs[i][1]]) << 32 | i;
+        }
+        Arrays.sort(weighted);
+
+        for (long w : weighted) {
+            int i = (int) w;
+            int a = find(parent, (int) (edges[i] >>> 32));
+            int b = find(parent, (int) edges[i]);
+            if (a != b) {
+                parent[Math.max(a, b)] = Math.min(a, b);
+                links[2 * count] = pairs[i][0];
+                links[2 * count + 1] = pairs[i][1];
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /* The room of group a and the room of group b with the smallest gap between them. */
+    private static int[] closestRooms(Map.Room[] rooms, int[] a, int[] b) {
+        int[] best = null;
+        int bestGap = Integer.MAX_VALUE;
+        for (int i : a) {
+            for (int j : b) {
+                int gap = gap(rooms[i], rooms[j]);
+                if (gap < bestGap) {
+                    bestGap = gap;
+                    best = new int[] {i, j};
+                }
+            }
+        }
+        return best;
+    }
+
+    /* Number of tiles a corridor must cross between a and b, at least. */
+    private static int gap(Map.Room a, Map.Room b) {
+        int gapX = Math.max(0, Math.max(a.X, b.X) - Math.min(a.X + a.width, b.X + b.width));
+        int gapY = Math.max(0, Math.max(a.Y, b.Y) - Math.min(a.Y + a.height, b.Y + b.height));
+        return gapX + gapY;
+    }
+
+    private static boolean isLinked(int[] links, int count, int[] pair) {
+        for (int i = 0; i < count; i++) {
+            if (links[2 * i] == pair[0] && links[2 * i + 1] == pair[1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
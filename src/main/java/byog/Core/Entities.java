@@ -0,0 +1,108 @@
+package byog.Core;
+
+import java.util.Arrays;
+
+/**
+ * Autonomous entities such as ghosts, stored as parallel arrays indexed by entity id rather
+ * than as one object each, so that a tick over thousands of them walks a few flat arrays.
+ * Ids run from 0 to size() - 1; despawning an entity moves the last one into its id.
+ *
+ * Every entity has a position, a target cell, a behavior (an index into the behaviors of its
+ * EntitySystem) and a state whose meaning is up to the behavior, with ACTIVE as the default.
+ */
+public class Entities {
+    public static final int ACTIVE = 0;
+
+    int[] x = new int[16];
+    int[] y = new int[16];
+    int[] targetX = new int[16];
+    int[] targetY = new int[16];
+    int[] state = new int[16];
+    int[] behavior = new int[16];
+    private int size;
+
+    /** @return number of entities */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds an entity at x, y in state ACTIVE, targeting its own cell.
+     * @return the id of the new entity
+     */
+    int add(int behaviorIndex, int ex, int ey) {
+        if (size == x.length) {
+            int capacity = size * 2;
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            targetX = Arrays.copyOf(targetX, capacity);
+            targetY = Arrays.copyOf(targetY, capacity);
+            state = Arrays.copyOf(state, capacity);
+            behavior = Arrays.copyOf(behavior, capacity);
+        }
+        int id = size++;
+        x[id] = ex;
+        y[id] = ey;
+        targetX[id] = ex;
+        targetY[id] = ey;
+        state[id] = ACTIVE;
+        behavior[id] = behaviorIndex;
+        return id;
+    }
+
+    /**
+     * Removes entity id. The entity that had the last id takes over id.
+     */
+    void remove(int id) {
+        checkId(id);
+        int last = --size;
+        x[id] = x[last];
+        y[id] = y[last];
+        targetX[id] = targetX[last];
+        targetY[id] = targetY[last];
+        state[id] = state[last];
+        behavior[id] = behavior[last];
+    }
+
+    private void checkId(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("no entity " + id + ", size " + size);
+        }
+    }
+
+    public int x(int id) {
+        checkId(id);
+        return x[id];
+    }
+
+    public int y(int id) {
+        checkId(id);
+        return y[id];
+    }
+
+    public int targetX(int id) {
+        checkId(id);
+        return targetX[id];
+    }
+
+    public int targetY(int id) {
+        checkId(id);
+        return targetY[id];
+    }
+
+    public void setTarget(int id, int tx, int ty) {
+        checkId(id);
+        targetX[id] = tx;
+        targetY[id] = ty;
+    }
+
+    public int state(int id) {
+        checkId(id);
+        return state[id];
+    }
+
+    public void setState(int id, int newState) {
+        checkId(id);
+        state[id] = newState;
+    }
+}
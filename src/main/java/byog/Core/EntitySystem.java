@@ -0,0 +1,254 @@
+package byog.Core;
+
+import byog.TileEngine.TETile;
+import byog.TileEngine.TileRegistry;
+import byog.TileEngine.Tileset;
+import byog.TileEngine.WorldView;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs the entities of one Map. Each tick every behavior is prepared once, then every entity
+ * picks a move from the positions at the start of the tick, and finally all moves are applied
+ * together. Moves follow the rule of Map.control: one cell up, down, left or right, never into
+ * a wall. Entities may share cells with each other and with the player.
+ *
+ * With more than PARALLEL_THRESHOLD entities the moves are picked on a fork-join pool in slices
+ * of ENTITIES_PER_TASK. Since no behavior sees another entity's move of the same tick and
+ * random() depends only on the seed, the tick and the entity id, a tick has the same outcome
+ * whatever the number of threads.
+ *
+ * Ex:
+ *      EntitySystem ghosts = new EntitySystem(map, seed);
+ *      int chase = ghosts.addBehavior(new ChaseBehavior());
+ *      ghosts.spawn(chase, x, y);
+ *      ghosts.tick(tick);
+ */
+public class EntitySystem {
+    /* Move keys in clockwise order, starting up. */
+    static final char[] MOVES = {'w', 'd', 's', 'a'};
+    private static final int PARALLEL_THRESHOLD = 4096;
+    private static final int ENTITIES_PER_TASK = 1024;
+
+    private final Map map;
+    private final TileStore tiles;
+    private final int width;
+    private final int height;
+    private final long seed;
+    private final Entities entities = new Entities();
+    private final ArrayList<Behavior> behaviors = new ArrayList<>();
+    private final Pathfinder pathfinder;
+    private final ForkJoinPool pool;
+    /* Moves picked in the current tick, by entity id. */
+    private char[] moves = new char[16];
+    /* Number of entities on every cell x + y * width. */
+    private final int[] occupancy;
+    private int caught;
+    private View view;
+
+    /**
+     * @param seed seed of the random numbers handed to behaviors
+     */
+    public EntitySystem(Map map, long seed) {
+        this(map, seed, ForkJoinPool.commonPool());
+    }
+
+    public EntitySystem(Map map, long seed, ForkJoinPool pool) {
+        this.map = map;
+        this.tiles = map.tileStore();
+        this.width = map.width();
+        this.height = map.height();
+        this.seed = seed;
+        this.pathfinder = new Pathfinder(map);
+        this.pool = pool;
+        this.occupancy = new int[width * height];
+    }
+
+    /**
+     * @return the index that spawn takes to give an entity this behavior
+     */
+    public int addBehavior(Behavior behavior) {
+        behaviors.add(behavior);
+        return behaviors.size() - 1;
+    }
+
+    /**
+     * Adds an entity with the behavior of the given index at x, y.
+     * @return the id of the new entity
+     */
+    public int spawn(int behavior, int x, int y) {
+        if (behavior < 0 || behavior >= behaviors.size()) {
+            throw new IllegalArgumentException("no behavior " + behavior);
+        }
+        if (!isWalkable(x, y)) {
+            throw new IllegalArgumentException("can't spawn in a wall or off the map: " + x
+                    + ", " + y);
+        }
+        occupancy[x + y * width]++;
+        return entities.add(behavior, x, y);
+    }
+
+    /**
+     * Removes entity id; the entity with the last id takes over id.
+     */
+    public void despawn(int id) {
+        occupancy[entities.x(id) + entities.y(id) * width]--;
+        entities.remove(id);
+    }
+
+    /**
+     * Advances every entity by one tick.
+     */
+    public void tick(long tick) {
+        for (Behavior behavior : behaviors) {
+            behavior.prepare(this, tick);
+        }
+
+        int n = entities.size();
+        if (moves.length < n) {
+            moves = new char[entities.x.length];
+        }
+        if (n > PARALLEL_THRESHOLD) {
+            pool.invoke(new UpdateTask(0, n, tick));
+        } else {
+            update(0, n, tick);
+        }
+
+        int playerCell = map.playerX() + map.playerY() * width;
+        caught = 0;
+        for (int id = 0; id < n; id++) {
+            int x = entities.x[id];
+            int y = entities.y[id];
+            char key = moves[id];
+            int nx = x + dx(key);
+            int ny = y + dy(key);
+            if (key != 0 && isWalkable(nx, ny)) {
+                occupancy[x + y * width]--;
+                occupancy[nx + ny * width]++;
+                entities.x[id] = nx;
+                entities.y[id] = ny;
+            }
+            if (entities.x[id] + entities.y[id] * width == playerCell) {
+                caught++;
+            }
+        }
+    }
+
+    private void update(int lo, int hi, long tick) {
+        for (int id = lo; id < hi; id++) {
+            moves[id] = behaviors.get(entities.behavior[id]).update(this, id, tick);
+        }
+    }
+
+    private class UpdateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int lo;
+        private final int hi;
+        private final long tick;
+
+        UpdateTask(int lo, int hi, long tick) {
+            this.lo = lo;
+            this.hi = hi;
+            this.tick = tick;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= ENTITIES_PER_TASK) {
+                update(lo, hi, tick);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new UpdateTask(lo, mid, tick), new UpdateTask(mid, hi, tick));
+        }
+    }
+
+    /**
+     * @return a random number for entity id in the given tick, the same on every call and on
+     *         every thread
+     */
+    public long random(long tick, int id) {
+        // SplitMix64 finalizer over seed, tick and id
+        return GameRandom.mix(seed + tick * GameRandom.GOLDEN_GAMMA
+                + (id + 1) * 0xD1B54A32D192ED03L);
+    }
+
+    /**
+     * @return true if x, y is on the map and not a wall
+     */
+    public boolean isWalkable(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height
+                && tiles.get(x, y) != TileRegistry.WALL;
+    }
+
+    static int dx(char key) {
+        return key == 'd' ? 1 : key == 'a' ? -1 : 0;
+    }
+
+    static int dy(char key) {
+        return key == 'w' ? 1 : key == 's' ? -1 : 0;
+    }
+
+    /** @return number of entities on the player's cell after the last tick */
+    public int caught() {
+        return caught;
+    }
+
+    public Entities entities() {
+        return entities;
+    }
+
+    /** @return the pathfinder of the map, for Behavior.prepare */
+    public Pathfinder pathfinder() {
+        return pathfinder;
+    }
+
+    public int playerX() {
+        return map.playerX();
+    }
+
+    public int playerY() {
+        return map.playerY();
+    }
+
+    /**
+     * @return a view of the map's view with every entity drawn as Tileset.GHOST under the
+     *         player and over everything else
+     */
+    public WorldView view() {
+        if (view == null) {
+            view = new View(map.view());
+        }
+        return view;
+    }
+
+    private class View implements WorldView {
+        private final WorldView world;
+
+        View(WorldView world) {
+            this.world = world;
+        }
+
+        @Override
+        public int width() {
+            return width;
+        }
+
+        @Override
+        public int height() {
+            return height;
+        }
+
+        @Override
+        public TETile get(int x, int y) {
+            TETile tile = world.get(x, y);
+            if (occupancy[x + y * width] > 0 && tile != Tileset.PLAYER) {
+                return Tileset.GHOST;
+            }
+            return tile;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package byog.Core;
+
+import byog.TileEngine.TETile;
+import byog.TileEngine.TileRegistry;
+import byog.TileEngine.WorldView;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Client side of FrameEncoder: applies frames one after another and shows the resulting world
+ * through view(). A delta that doesn't follow the previous frame is rejected; the client then
+ * needs a keyframe before it can go on.
+ */
+public class FrameDecoder {
+    private byte[] tiles;
+    private int width;
+    private int height;
+    private long nextSequence = -1;
+    private final Inflater inflater = new Inflater();
+    private final WorldView view = new WorldView() {
+        @Override
+        public int width() {
+            return width;
+        }
+
+        @Override
+        public int height() {
+            return height;
+        }
+
+        @Override
+        public TETile get(int x, int y) {
+            return TileRegistry.tile(tiles[x + y * width]);
+        }
+    };
+
+    /**
+     * Applies the next frame of the stream.
+     * @throws IOException if the frame is corrupt or a delta arrives out of sequence, in which
+     *                     case the decoder keeps its previous state
+     */
+    public void decode(ByteBuffer frame) throws IOException {
+        try {
+            byte kind = frame.get();
+            long sequence = getVarlong(frame);
+            ByteBuffer body = frame;
+            if ((kind & FrameEncoder.COMPRESSED) != 0) {
+                body = inflate(frame, getVarint(frame));
+            }
+
+            if ((kind & ~FrameEncoder.COMPRESSED) == FrameEncoder.KEYFRAME) {
+                readKeyframe(body);
+            } else if ((kind & ~FrameEncoder.COMPRESSED) == FrameEncoder.DELTA) {
+                if (tiles == null || sequence != nextSequence) {
+                    throw new IOException("frame " + sequence + " is a delta against a frame "
+                            + "never received; a keyframe is needed");
+                }
+                readDelta(body);
+            } else {
+                throw new IOException("frame corrupt: unknown kind " + kind);
+            }
+            nextSequence = sequence + 1;
+        } catch (RuntimeException e) {
+            // BufferUnderflowException, bad sizes or ids
+            throw new IOException("frame corrupt: " + e, e);
+        }
+    }
+
+    private ByteBuffer inflate(ByteBuffer in, int length) throws IOException {
+        if (length < 0) {
+            throw new IOException("frame corrupt: body length " + length);
+        }
+        byte[] out = new byte[length];
+        inflater.reset();
+        inflater.setInput(in.array(), in.arrayOffset() + in.position(), in.remaining());
+        try {
+            int n = 0;
+            while (n < length && !inflater.finished()) {
+                int read = inflater.inflate(out, n, length - n);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += read;
+            }
+            if (n != length) {
+                throw new IOException("frame corrupt: body has the wrong size");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("frame corrupt: " + e.getMessage(), e);
+        }
+        in.position(in.limit());
+        return ByteBuffer.wrap(out);
+    }
+
+    private void readKeyframe(ByteBuffer in) throws IOException {
+        int w = getVarint(in);
+        int h = getVarint(in);
+        if (w <= 0 || h <= 0) {
+            throw new IOException("frame corrupt: size " + w + "x" + h);
+        }
+        byte[] next = new byte[Math.multiplyExact(w, h)];
+        int i = 0;
+        while (i < next.length) {
+            byte id = checkedId(in.get());
+            int run = getVarint(in);
+            if (run <= 0 || run > next.length - i) {
+                throw new IOException("frame corrupt: bad run length " + run);
+            }
+            Arrays.fill(next, i, i + run, id);
+            i += run;
+        }
+        tiles = next;
+        width = w;
+        height = h;
+    }
+
+    private void readDelta(ByteBuffer in) throws IOException {
+        int count = getVarint(in);
+        if (count > tiles.length) {
+            throw new IOException("frame corrupt: " + count + " changes");
+        }
+        int[] cells = new int[count];
+        byte[] ids = new byte[cells.length];
+        int cell = -1;
+        for (int i = 0; i < count; i++) {
+            cell += getVarint(in) + 1;
+            if (cell < 0 || cell >= tiles.length) {
+                throw new IOException("frame corrupt: cell " + cell + " outside the world");
+            }
+            cells[i] = cell;
+            ids[i] = checkedId(in.get());
+        }
+        // Only applied once the whole delta checked out
+        for (int i = 0; i < cells.length; i++) {
+            tiles[cells[i]] = ids[i];
+        }
+    }
+
+    private static byte checkedId(byte id) throws IOException {
+        if (id < 0 || id >= TileRegistry.size()) {
+            throw new IOException("frame corrupt: unknown tile id " + id);
+        }
+        return id;
+    }
+
+    private static int getVarint(ByteBuffer in) throws IOException {
+        long value = getVarlong(in);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("frame corrupt: number too large");
+        }
+        return (int) value;
+    }
+
+    private static long getVarlong(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("frame corrupt: varint too long");
+    }
+
+    /**
+     * @return the world as of the last frame; empty before the first keyframe
+     */
+    public WorldView view() {
+        return view;
+    }
+
+    /** @return true once a keyframe has been received */
+    public boolean ready() {
+        return tiles != null;
+    }
+}
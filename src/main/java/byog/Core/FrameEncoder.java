@@ -0,0 +1,235 @@
+package byog.Core;
+
+import byog.TileEngine.TileRegistry;
+import byog.TileEngine.WorldView;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+/**
+ * Turns successive frames of a world into a compact stream for remote clients: a keyframe
+ * holding every tile, then deltas holding only the cells that changed. One encoder serves one
+ * client, since it remembers what that client has already seen; FrameDecoder is the other end.
+ *
+ * Each frame is
+ *
+ *      byte    KEYFRAME or DELTA, | COMPRESSED when the body is deflated
+ *      varint  sequence number, counting from 0
+ *      ...     body, preceded by its varint uncompressed length when COMPRESSED
+ *
+ * A keyframe body is the width and height as varints, then the tile ids of every cell
+ * x + y * width in order, as runs of a tile id byte and a varint run length. A delta body is a
+ * varint count, then one (varint gap, tile id byte) pair per changed cell in increasing cell
+ * order, where gap is the number of unchanged cells skipped since the previous change. A
+ * player step thus costs about 10 bytes instead of a 2400 character frame.
+ *
+ * Keyframes are sent first, every keyframeInterval frames, after requestKeyframe(), when the
+ * world changes size, and when so many cells changed that a delta would not be smaller.
+ *
+ * Tiles travel as their TileRegistry ids, so every tile of a world must be a registered Tileset
+ * constant. A world showing any other tile, e.g. a colorVariant copy, is rejected.
+ */
+public class FrameEncoder {
+    static final byte KEYFRAME = 0;
+    static final byte DELTA = 1;
+    static final byte COMPRESSED = (byte) 0x80;
+    /* Bodies smaller than this aren't worth running through the deflater. */
+    private static final int COMPRESS_MIN = 64;
+
+    private final int keyframeInterval;
+    private final Deflater deflater;
+    private byte[] last;
+    private byte[] current = new byte[0];
+    private int width;
+    private int height;
+    private long sequence;
+    private int sinceKeyframe;
+    private boolean keyframeRequested;
+    private ByteBuffer body = ByteBuffer.allocate(256);
+    private byte[] deflated = new byte[0];
+    private long bytesEncoded;
+    private long keyframes;
+
+    /**
+     * @param keyframeInterval frames between two keyframes, 1 for keyframes only
+     * @param compress true to deflate bodies when that makes them smaller
+     */
+    public FrameEncoder(int keyframeInterval, boolean compress) {
+        if (keyframeInterval < 1) {
+            throw new IllegalArgumentException("keyframe interval must be positive: "
+                    + keyframeInterval);
+        }
+        this.keyframeInterval = keyframeInterval;
+        this.deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+    }
+
+    /**
+     * Makes the next frame a keyframe, e.g. because the client lost track of the stream.
+     */
+    public void requestKeyframe() {
+        keyframeRequested = true;
+    }
+
+    /**
+     * @return the next frame of the stream, showing world as it is now
+     * @throws IllegalArgumentException if world shows a tile TileRegistry has no id for
+     */
+    public ByteBuffer encode(WorldView world) {
+        int w = world.width();
+        int h = world.height();
+        int size = w * h;
+        if (current.length != size) {
+            current = new byte[size];
+        }
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                current[x + y * w] = TileRegistry.id(world.get(x, y));
+            }
+        }
+
+        boolean keyframe = last == null || w != width || h != height || keyframeRequested
+                || sinceKeyframe + 1 >= keyframeInterval;
+        int changes = 0;
+        if (!keyframe) {
+            changes = countChanges();
+            // A change costs two bytes or more, a keyframe of a typical world about size / 4
+            keyframe = changes > size / 8;
+        }
+
+        byte kind;
+        if (keyframe) {
+            kind = KEYFRAME;
+            writeKeyframe(w, h);
+            sinceKeyframe = 0;
+            keyframeRequested = false;
+            keyframes++;
+        } else {
+            kind = DELTA;
+            writeDelta(changes);
+            sinceKeyframe++;
+        }
+
+        byte[] swap = last;
+        last = current;
+        current = swap == null || swap.length != size ? new byte[size] : swap;
+        width = w;
+        height = h;
+
+        ByteBuffer frame = pack(kind);
+        bytesEncoded += frame.remaining();
+        return frame;
+    }
+
+    private int countChanges() {
+        int changes = 0;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] != last[i]) {
+                changes++;
+            }
+        }
+        return changes;
+    }
+
+    private void ensureBody(int capacity) {
+        if (body.capacity() < capacity) {
+            body = ByteBuffer.allocate(Math.max(capacity, body.capacity() * 2));
+        }
+        body.clear();
+    }
+
+    private void writeKeyframe(int w, int h) {
+        ensureBody(10 + current.length * 2);        // a run never takes more than 2 bytes per cell
+        SaveFormat.putVarint(body, w);
+        SaveFormat.putVarint(body, h);
+        int i = 0;
+        while (i < current.length) {
+            byte id = current[i];
+            int run = 1;
+            while (i + run < current.length && current[i + run] == id) {
+                run++;
+            }
+            body.put(id);
+            SaveFormat.putVarint(body, run);
+            i += run;
+        }
+        body.flip();
+    }
+
+    private void writeDelta(int changes) {
+        ensureBody(5 + changes * 6);
+        SaveFormat.putVarint(body, changes);
+        int previous = -1;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] != last[i]) {
+                SaveFormat.putVarint(body, i - previous - 1);
+                body.put(current[i]);
+                previous = i;
+            }
+        }
+        body.flip();
+    }
+
+    /* Adds the header to the body, deflating the body if that pays off. */
+    private ByteBuffer pack(byte kind) {
+        int length = body.remaining();
+        if (deflater != null && length >= COMPRESS_MIN) {
+            if (deflated.length < length) {
+                deflated = new byte[length];
+            }
+            deflater.reset();
+            deflater.setInput(body.array(), 0, length);
+            deflater.finish();
+            int n = 0;
+            while (!deflater.finished() && n < deflated.length) {
+                n += deflater.deflate(deflated, n, deflated.length - n);
+            }
+            if (deflater.finished() && n + 5 < length) {
+                ByteBuffer frame = ByteBuffer.allocate(1 + 10 + 5 + n);
+                frame.put((byte) (kind | COMPRESSED));
+                putVarlong(frame, sequence++);
+                SaveFormat.putVarint(frame, length);
+                frame.put(deflated, 0, n);
+                frame.flip();
+                return frame;
+            }
+        }
+        ByteBuffer frame = ByteBuffer.allocate(1 + 10 + length);
+        frame.put(kind);
+        putVarlong(frame, sequence++);
+        frame.put(body);
+        frame.flip();
+        return frame;
+    }
+
+    static void putVarlong(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /** @return total size of all frames encoded so far, in bytes */
+    public long bytesEncoded() {
+        return bytesEncoded;
+    }
+
+    /** @return number of keyframes encoded so far */
+    public long keyframes() {
+        return keyframes;
+    }
+
+    /** @return number of frames encoded so far */
+    public long frames() {
+        return sequence;
+    }
+
+    /**
+     * Releases the deflater. The encoder can't be used afterwards.
+     */
+    public void close() {
+        if (deflater != null) {
+            deflater.end();
+        }
+    }
+}
@@ -3,14 +3,38 @@ package byog.Core;
 import byog.TileEngine.TERenderer;
 import byog.TileEngine.TETile;
 import byog.TileEngine.Tileset;
+import byog.TileEngine.WorldView;
 import edu.princeton.cs.introcs.StdDraw;
 
 import java.awt.*;
-import java.io.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.Random;
 
 public class Game {
     TERenderer ter = new TERenderer();
+    private final InputEvents input = new InputEvents();
+    /* Simulation rate of the play loop, and ticks it may run without drawing when behind. */
+    private static final int TICKS_PER_SECOND = 30;
+    private static final int MAX_FRAME_SKIP = 5;
+    private static final Path SAVE_FILE = Paths.get("./map.sav");
+    /*
+     * With JOURNAL_SAVES a game is saved as its seed plus the keys played, see Journal; run with
+     * -Dbyog.journal=false to save the whole map to SAVE_FILE instead.
+     */
+    private static final boolean JOURNAL_SAVES =
+            Boolean.parseBoolean(System.getProperty("byog.journal", "true"));
+    private static final Path JOURNAL_FILE = Paths.get("./map.journal");
+    /* Run with -Dbyog.stats=true to print timing and cache statistics, e.g. when play ends. */
+    static final boolean PRINT_STATS = Boolean.getBoolean("byog.stats");
+    /* Worlds of recent seeds, shared by all games so repeated input strings skip generation. */
+    private static final WorldCache WORLDS = new WorldCache(256, 16 << 20);
+    /* Journal of the game being played, null when it is saved with SaveFormat instead. */
+    private Journal journal;
+
     /* Feel free to change the width and height. */
     public static final int WIDTH = 80;
     public static final int HEIGHT = 30;
@@ -25,6 +49,7 @@ public class Game {
         long seed = 0;
         char mode = 0;
 
+        input.install();
         String startStr = startMenu();
 
         if (startStr.equalsIgnoreCase("n")
@@ -32,7 +57,7 @@ public class Game {
                 || startStr.equalsIgnoreCase("e")) {
             startKey = startStr.toLowerCase().charAt(0);
         } else {
-            seed = parseSeed(startStr);
+            seed = startStr.isEmpty() ? 0 : CommandPlan.compile(startStr).seed();
             System.out.println("seed: " + seed);
             mode = parseNinja(startStr) ? 'N' : 0;   // N for ninja
         }
@@ -50,19 +75,26 @@ public class Game {
         Map map = new Map(WIDTH, HEIGHT);
 
         if (startKey == 'n' || startKey == 'N') {
-            if (seed != 0) {
-                map.setRandom(seed);
+            if (seed == 0) {
+                seed = new Random().nextLong();
             }
+            map.setRandom(seed);
             map.initialize();
+            startJournal(seed);
             ter.initialize(WIDTH, HEIGHT);
-            ter.renderFrame(map.getFloorTiles());
+            ter.renderFrame(map.view());
             playInMap(map, mode);
         }
 
         if (startKey == 'l' || startKey == 'L') {
             map = loadMap();
+            if (map == null) {
+                seed = new Random().nextLong();
+                map = newMap(seed);
+                startJournal(seed);
+            }
             ter.initialize(WIDTH, HEIGHT);
-            ter.renderFrame(map.getFloorTiles());
+            ter.renderFrame(map.view());
             playInMap(map, mode);
         }
 
@@ -81,97 +113,128 @@ public class Game {
     }
 
     private void playInMap(Map map, char mode) {
-        while (true) {
-            drawHUD(map.getFloorTiles());
-            char key = solicitKey();
+        GameLoop loop = new GameLoop(input, TICKS_PER_SECOND, MAX_FRAME_SKIP);
+        loop.run(new PlaySimulation(map, mode));
+        closeJournal();
+        if (PRINT_STATS) {
+            System.out.println(loop.tickTimes());
+            System.out.println(loop.frameTimes());
+        }
+    }
 
-            if (key == ':') {
-                char[] optionKeys = optionKeys();
+    /**
+     * Moves typed between two ticks are applied at the next tick; every frame redraws the
+     * tiles that changed and the HUD showing what is under the mouse.
+     */
+    private class PlaySimulation implements GameLoop.Simulation {
+        private final Map map;
+        private final char mode;
+        private final ArrayDeque<Character> pendingMoves = new ArrayDeque<>();
+        private final WorldView view;
+        private TETile hudTile;
+        private boolean hudDirty = true;
+
+        PlaySimulation(Map map, char mode) {
+            this.map = map;
+            this.mode = mode;
+            this.view = map.view();
+        }
 
-                if (optionKeys[0] == 'q' && optionKeys[1] == 10) {
-                    break;
-                }
+        @Override
+        public boolean onKey(char key) {
+            if (key != ':') {
+                pendingMoves.add(key);
+                return true;
+            }
 
-                if (optionKeys[0] == 'w' && optionKeys[1] == 10) {
-                    saveMap(map);
-                }
+            applyPendingMoves();
+            char[] optionKeys = optionKeys();
 
-                if (optionKeys[0] == 'w' && optionKeys[1] == 'q' && optionKeys[2] == 10) {
-                    saveMap(map);
-                    break;
-                }
+            if (optionKeys[0] == 'q' && optionKeys[1] == 10) {
+                return false;
+            }
 
-            } else {
+            if (optionKeys[0] == 'w' && optionKeys[1] == 10) {
+                saveMap(map);
+            }
+
+            if (optionKeys[0] == 'w' && optionKeys[1] == 'q' && optionKeys[2] == 10) {
+                saveMap(map);
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void onMouseMoved() {
+            hudDirty = true;
+        }
+
+        @Override
+        public boolean tick(long tick) {
+            boolean moved = applyPendingMoves();
+            return moved || hudDirty || !hoveredTile().equals(hudTile);
+        }
+
+        private boolean applyPendingMoves() {
+            if (pendingMoves.isEmpty()) {
+                return false;
+            }
+            while (!pendingMoves.isEmpty()) {
+                char key = pendingMoves.poll();
                 if (mode == 'N') {      // ninja mode
                     map.ninjaControl(key);
                 } else {                // normal mode
                     map.control(key);
                 }
-                TETile[][] tiles = map.getFloorTiles();
-                ter.renderFrame(tiles);
+                recordMove(map, key, mode == 'N');
             }
+            return true;
         }
-    }
-
-    private void drawHUD(TETile[][] tiles) {
-        TETile preTile = Tileset.NOTHING;
 
-        while (!StdDraw.hasNextKeyTyped()) {
+        /* Tile under the mouse, or NOTHING when the mouse is outside the world. */
+        private TETile hoveredTile() {
             int mx = (int) StdDraw.mouseX();
             int my = (int) StdDraw.mouseY();
-            if (mx > WIDTH || my > HEIGHT) {
-                continue;
-            }
-            if (preTile.equals(tiles[mx][my])) {
-                continue;
-            }
-            if (tiles[mx][my].equals(Tileset.LOCKED_DOOR)) {
-                ter.renderFrame(tiles);
-                StdDraw.enableDoubleBuffering();
-                StdDraw.setPenColor(Color.white);
-                preTile = Tileset.LOCKED_DOOR;
-                StdDraw.textLeft(1, HEIGHT - 1, "Locked Door");
-            } else if (tiles[mx][my].equals(Tileset.WALL)) {
-                ter.renderFrame(tiles);
-                StdDraw.enableDoubleBuffering();
-                StdDraw.setPenColor(Color.white);
-                preTile = Tileset.WALL;
-                StdDraw.textLeft(1, HEIGHT - 1, "Wall");
-            } else if (tiles[mx][my].equals(Tileset.COIN)) {
-                ter.renderFrame(tiles);
-                StdDraw.enableDoubleBuffering();
-                StdDraw.setPenColor(Color.white);
-                preTile = Tileset.COIN;
-                StdDraw.textLeft(1, HEIGHT - 1, "Coin");
-            } else if (tiles[mx][my].equals(Tileset.PLAYER)) {
-                ter.renderFrame(tiles);
-                StdDraw.enableDoubleBuffering();
-                StdDraw.setPenColor(Color.white);
-                preTile = Tileset.PLAYER;
-                StdDraw.textLeft(1, HEIGHT - 1, "You, the player!");
-            } else if (tiles[mx][my].equals(Tileset.GRASS)) {
-                ter.renderFrame(tiles);
-                StdDraw.enableDoubleBuffering();
-                StdDraw.setPenColor(Color.white);
-                preTile = Tileset.GRASS;
-                StdDraw.textLeft(1, HEIGHT - 1, "Grass");
-            } else if (tiles[mx][my].equals(Tileset.FLOOR)) {
-                ter.renderFrame(tiles);
-                StdDraw.enableDoubleBuffering();
-                StdDraw.setPenColor(Color.white);
-                preTile = Tileset.FLOOR;
-                StdDraw.textLeft(1, HEIGHT - 1, "Floor");
-            } else {
-                ter.renderFrame(tiles);
-                StdDraw.enableDoubleBuffering();
-                StdDraw.setPenColor(Color.white);
-                preTile = Tileset.NOTHING;
-                StdDraw.textLeft(1, HEIGHT - 1, "Nothing");
+            if (mx < 0 || my < 0 || mx >= WIDTH || my >= HEIGHT) {
+                return Tileset.NOTHING;
             }
+            return view.get(mx, my);
+        }
+
+        @Override
+        public void render() {
+            hudTile = hoveredTile();
+            hudDirty = false;
+
+            // Only the tiles that changed and the HUD strip are redrawn
+            ter.renderChanges(view);
+            ter.redrawRow(HEIGHT - 1);
+            StdDraw.setPenColor(Color.white);
+            StdDraw.textLeft(1, HEIGHT - 1, hudText(hudTile));
             StdDraw.show();
         }
     }
 
+    private static String hudText(TETile tile) {
+        if (tile.equals(Tileset.LOCKED_DOOR)) {
+            return "Locked Door";
+        } else if (tile.equals(Tileset.WALL)) {
+            return "Wall";
+        } else if (tile.equals(Tileset.COIN)) {
+            return "Coin";
+        } else if (tile.equals(Tileset.PLAYER)) {
+            return "You, the player!";
+        } else if (tile.equals(Tileset.GHOST)) {
+            return "Ghost";
+        } else if (tile.equals(Tileset.GRASS)) {
+            return "Grass";
+        } else if (tile.equals(Tileset.FLOOR)) {
+            return "Floor";
+        }
+        return "Nothing";
+    }
+
     /**
      * Method used for autograding and testing the game code. The input string will be a series
      * of characters (for example, "n123sswwdasdassadwas", "n123sss:q", "lwww". The game should
@@ -187,36 +250,47 @@ public class Game {
      */
     public TETile[][] playWithInputString(String input) {
 
-        int seed = parseSeed(input);
-        char start = parseStart(input);
-        char[] control = parseControl(input);
+        CommandPlan plan = CommandPlan.compile(input);
         Map map;
 
         // N for new game
-        if (start == 'n') {
-            // Crete new map and init
-            map = new Map(WIDTH, HEIGHT);
-            map.setRandom(seed);
-            map.initialize();
+        if (plan.start() == 'n') {
+            if (!plan.hasSeed()) {
+                throw new IllegalArgumentException("no seed in input: " + input);
+            }
+            // Crete new map and init, or take it from the cache
+            map = WORLDS.get(plan.seed(), WIDTH, HEIGHT, GeneratorVersion.CLASSIC,
+                    GameRandom.Kind.LCG48);
 
-            controlMap(map, control);
+            controlMap(map, plan, true, plan.seed());
             return map.getFloorTiles();         // reminder: getFloorTiles() will compress the world map and the player, while keep the world unchanged
         }
 
-        if (start == 'l') {
+        if (plan.start() == 'l') {
             map = loadMap();
+            boolean fresh = map == null;
+            long seed = 0;
+            if (fresh) {
+                seed = new Random().nextLong();
+                map = newMap(seed);
+            }
 
-            controlMap(map, control);
+            controlMap(map, plan, fresh, seed);
             return map.getFloorTiles();         // reminder: getFloorTiles() will compress the world map and the player, while keep the world unchanged
         }
 
-        if (start == 'e') {
+        if (plan.start() == 'e') {
             System.exit(0);
         }
 
         return null;
     }
 
+    /** @return the cache of worlds shared by playWithInputString, for its hit rate */
+    public static WorldCache worldCache() {
+        return WORLDS;
+    }
+
     private char[] optionKeys() {
         char[] combo = new char[100];
         StringBuilder sb = new StringBuilder();
@@ -242,86 +316,109 @@ public class Game {
         StdDraw.textLeft(0, 10, "Map v0.1   Game v0.1");
     }
 
-    // control the players' move through Map's api `control`
-    private static void controlMap(Map map, char[] control) {
-        for (int i = 0; i < control.length; i++) {
-            char step = control[i];
-            if (step == 'a' || step == 'w' || step == 's' || step == 'd') {
-                map.control(step);
+    /*
+     * Control the players' move through Map's api `move`, one run of equal keys at a time, and
+     * save if the plan asks to. Nothing touches the disk before that: the moves are journaled
+     * all at once, and a fresh map, not journaled yet, gets its journal from seed only then.
+     */
+    private void controlMap(Map map, CommandPlan plan, boolean fresh, long seed) {
+        int end = plan.run(map);
+        if (end < plan.size()) {
+            if (fresh) {
+                startJournal(seed);
             }
-
-            if (step == ':' && control[++i] == 'q') {
-                saveMap(map);
-                return;
+            if (journal != null) {
+                try {
+                    journal.append(plan, end, map);
+                } catch (IOException e) {
+                    System.out.println("could not write journal: " + e.getMessage());
+                    closeJournal();
+                }
             }
+            saveMap(map);
         }
+        closeJournal();
     }
 
-    private static int parseSeed(String input) {
-        String str;
-        str = input.replaceAll("[^0-9]", "");
-        Random rand = new Random();
-        return (str.isEmpty()) ? rand.nextInt() : Integer.parseInt(str);
-    }
-
-    private static char parseStart(String input) {
-        return input.toLowerCase().charAt(0);
-    }
-
-    private static char[] parseControl(String input) {
-        input = input.toLowerCase().replaceAll("[0-9]", "");
-        return input.substring(1).toCharArray();
-    }
-
-    private static void saveMap(Map map) {
-        File f = new File("./map.ser");
+    private void saveMap(Map map) {
         try {
-            if (!f.exists()) {
-                f.createNewFile();
+            if (journal != null) {
+                journal.save();
+            } else {
+                SaveFormat.write(map, SAVE_FILE);
             }
-            FileOutputStream fs = new FileOutputStream(f);
-            ObjectOutputStream os = new ObjectOutputStream(fs);
-            os.writeObject(map);
-            os.close();
         } catch (IOException e) {
-            System.out.println("file not found");
+            System.out.println("could not save: " + e.getMessage());
             System.exit(0);
         }
     }
 
-    private static Map loadMap() {
-        File f = new File("./map.ser");
-        if (f.exists()) {
-            try {
-                FileInputStream fs = new FileInputStream(f);
-                ObjectInputStream os = new ObjectInputStream(fs);
-                Map map = (Map) os.readObject();
-                os.close();
-                return map;
-            } catch (FileNotFoundException e) {
-                System.out.println("file not found");
-                System.exit(0);
-            } catch (IOException e) {
-                System.out.println(e);
-                System.exit(0);
-            } catch (ClassNotFoundException e) {
-                System.out.println("class not found");
-                System.exit(0);
+    /* Returns null if there is no saved game. */
+    private Map loadMap() {
+        closeJournal();
+        try {
+            if (JOURNAL_SAVES && Files.exists(JOURNAL_FILE)) {
+                Journal.Restored restored = Journal.open(JOURNAL_FILE, true);
+                journal = restored.journal;
+                return restored.map;
+            }
+            if (Files.exists(SAVE_FILE)) {
+                return SaveFormat.read(SAVE_FILE);
             }
+        } catch (IOException e) {
+            System.out.println(e);
+            System.exit(0);
         }
 
+        return null;
+    }
+
+    private Map newMap(long seed) {
         Map map = new Map(WIDTH, HEIGHT);
+        map.setRandom(seed);
         map.initialize();
         return map;
     }
 
-    private static char solicitKey() {
-        while (true) {
-            if (!StdDraw.hasNextKeyTyped()) {
-                continue;
-            }
-            return (StdDraw.nextKeyTyped());
+    /* Starts journaling a new game; without a journal the game is still playable. */
+    private void startJournal(long seed) {
+        closeJournal();
+        if (!JOURNAL_SAVES) {
+            return;
+        }
+        try {
+            journal = Journal.create(JOURNAL_FILE, seed, WIDTH, HEIGHT);
+        } catch (IOException e) {
+            System.out.println("could not start journal: " + e.getMessage());
+        }
+    }
+
+    private void recordMove(Map map, char key, boolean ninja) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.append(key, ninja, map);
+        } catch (IOException e) {
+            System.out.println("could not write journal: " + e.getMessage());
+            closeJournal();
+        }
+    }
+
+    private void closeJournal() {
+        if (journal == null) {
+            return;
         }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.out.println("could not close journal: " + e.getMessage());
+        }
+        journal = null;
+    }
+
+    private char solicitKey() {
+        return input.nextKey();
     }
 
     private void drawStartFrame(String cheatCode) {
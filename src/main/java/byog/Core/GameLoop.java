@@ -0,0 +1,135 @@
+package byog.Core;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed-timestep game loop. The simulation advances in ticks of exactly 1 / ticksPerSecond
+ * seconds, numbered from 0, independent of how fast frames are drawn. Between ticks the loop
+ * sleeps on the InputEvents queue until the next tick is due, so input is handled as soon as it
+ * arrives and an idle game only wakes ticksPerSecond times a second. When ticks fall behind, up
+ * to maxFrameSkip extra ticks run back to back before the next frame is drawn; anything beyond
+ * that is dropped and counted in skippedTicks().
+ *
+ * Time spent in every tick and in every rendered frame is recorded in tickTimes() and
+ * frameTimes().
+ */
+public class GameLoop {
+    /**
+     * The game driven by the loop. All methods are called on the loop thread.
+     */
+    public interface Simulation {
+        /**
+         * Called for every typed key.
+         * @return false to stop the loop
+         */
+        boolean onKey(char key);
+
+        /** Called when the mouse moved. */
+        void onMouseMoved();
+
+        /**
+         * Advances the game by one tick.
+         * @return true if the game changed and needs to be drawn again
+         */
+        boolean tick(long tick);
+
+        /** Draws the current state. */
+        void render();
+    }
+
+    private final InputEvents input;
+    private final long tickNanos;
+    private final int maxFrameSkip;
+    private final TimingHistogram tickTimes = new TimingHistogram("tick");
+    private final TimingHistogram frameTimes = new TimingHistogram("frame");
+    private long tickCount;
+    private long skippedTicks;
+    private boolean running;
+
+    /**
+     * @param input source of key and mouse events
+     * @param ticksPerSecond simulation rate
+     * @param maxFrameSkip ticks that may run without a frame in between when behind
+     */
+    public GameLoop(InputEvents input, int ticksPerSecond, int maxFrameSkip) {
+        if (ticksPerSecond <= 0 || maxFrameSkip < 0) {
+            throw new IllegalArgumentException("bad loop rate: " + ticksPerSecond + " ticks/s, "
+                    + maxFrameSkip + " frame skip");
+        }
+        this.input = input;
+        this.tickNanos = 1_000_000_000L / ticksPerSecond;
+        this.maxFrameSkip = maxFrameSkip;
+    }
+
+    /**
+     * Runs the loop until sim.onKey returns false or stop() is called. Draws one frame first.
+     */
+    public void run(Simulation sim) {
+        running = true;
+        render(sim);
+        long nextTick = System.nanoTime() + tickNanos;
+
+        while (running) {
+            boolean dirty = false;
+            long now = System.nanoTime();
+
+            int ticks = 0;
+            while (now >= nextTick && ticks <= maxFrameSkip) {
+                long start = System.nanoTime();
+                dirty |= sim.tick(tickCount++);
+                tickTimes.record(System.nanoTime() - start);
+                nextTick += tickNanos;
+                ticks++;
+                now = System.nanoTime();
+            }
+            if (now >= nextTick) {
+                // Too far behind: drop the backlog instead of spiralling
+                long behind = (now - nextTick) / tickNanos + 1;
+                skippedTicks += behind;
+                nextTick += behind * tickNanos;
+            }
+
+            if (dirty) {
+                render(sim);
+            }
+
+            // Wait in nanoseconds: whole milliseconds would round down to 0 and spin before a tick
+            long wait = Math.max(0, nextTick - System.nanoTime());
+            int event = input.next(wait, TimeUnit.NANOSECONDS);
+            if (event == InputEvents.MOUSE_MOVED) {
+                sim.onMouseMoved();
+            } else if (event >= 0 && !sim.onKey((char) event)) {
+                running = false;
+            }
+        }
+    }
+
+    private void render(Simulation sim) {
+        long start = System.nanoTime();
+        sim.render();
+        frameTimes.record(System.nanoTime() - start);
+    }
+
+    /** Makes run() return after the current iteration. Must be called on the loop thread. */
+    public void stop() {
+        running = false;
+    }
+
+    /** @return number of ticks run so far, which is also the number of the next tick */
+    public long tickCount() {
+        return tickCount;
+    }
+
+    /** @return number of ticks dropped because the loop fell too far behind */
+    public long skippedTicks() {
+        return skippedTicks;
+    }
+
+    public TimingHistogram tickTimes() {
+        return tickTimes;
+    }
+
+    public TimingHistogram frameTimes() {
+        return frameTimes;
+    }
+}
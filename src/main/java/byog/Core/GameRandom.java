@@ -0,0 +1,68 @@
+package byog.Core;
+
+import java.util.Random;
+
+/**
+ * Random number generator of world generation. It is a java.util.Random, so RandomUtils takes it
+ * as is, but unlike Random it is not thread-safe and never pays for synchronization: every
+ * thread is meant to have its own, e.g. obtained with split(). Its state can be read and
+ * restored, so saved games continue with the same numbers.
+ *
+ * Ex:
+ *      GameRandom random = GameRandom.create(GameRandom.Kind.XOSHIRO256, seed);
+ *      GameRandom rooms = random.split();
+ *      GameRandom decoration = random.split();
+ */
+public abstract class GameRandom extends Random {
+    private static final long serialVersionUID = 1L;
+
+    static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /**
+     * The algorithms available. The ordinal is stored in save files, so constants must only be
+     * added at the end.
+     */
+    public enum Kind {
+        /** Same numbers as new java.util.Random(seed); the worlds players know. */
+        LCG48,
+        /** xoshiro256**: 64 bits per step, a 2^256 - 1 period, and faster. */
+        XOSHIRO256
+    }
+
+    GameRandom(long seed) {
+        super(seed);        // calls setSeed(seed)
+    }
+
+    public static GameRandom create(Kind kind, long seed) {
+        if (kind == Kind.XOSHIRO256) {
+            return new Xoshiro256Random(seed);
+        }
+        return new Lcg48Random(seed);
+    }
+
+    public abstract Kind kind();
+
+    /**
+     * Returns a new generator of the same kind, seeded from this one, which advances. The
+     * streams of the two don't overlap in practice, so they can be handed to different phases
+     * or threads, and splitting in the same order always gives the same streams.
+     */
+    public abstract GameRandom split();
+
+    /**
+     * @return the current state, to be passed to setState later
+     */
+    public abstract long[] state();
+
+    /**
+     * @throws IllegalArgumentException if state doesn't have the length of state()
+     */
+    public abstract void setState(long[] state);
+
+    /* SplitMix64, turning one seed into well mixed, different seeds. */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
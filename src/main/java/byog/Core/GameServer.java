@@ -0,0 +1,429 @@
+package byog.Core;
+
+import byog.TileEngine.TETile;
+import byog.TileEngine.WorldView;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Headless server hosting many independent games, for bots. It listens on the loopback
+ * interface only; every connection is a session with its own Map. Nothing here touches StdDraw.
+ *
+ * On Java 21 and later every session runs on a virtual thread of its own, and by default there
+ * is no limit on sessions. Java 17 has no virtual threads, so sessions run on platform threads
+ * instead, each with a stack of its own, and at most MAX_PLATFORM_SESSIONS are served at once
+ * unless the constructor is given another limit. A connection past the limit is answered
+ * "error server full" and closed.
+ *
+ * The protocol is line based, UTF-8. Each line holds keys in the grammar of
+ * Game.playWithInputString: "n123sswd" starts a new world from seed 123 and moves, "l" loads
+ * the session's save, "wasd" moves in the current game and ":q" saves and ends it. A few
+ * session commands start with '!':
+ *
+ *      !frame          reply with whole frames (the default)
+ *      !diff           reply with the cells that changed since the last reply
+ *      !stream         reply with the next FrameEncoder frame, which FrameDecoder reads
+ *      !slot name      save to and load from slot name, so a later session can resume
+ *
+ * Until a slot is named, a session saves to a slot of its own named after a random UUID, which
+ * no other session can guess. Lines are at most MAX_LINE characters; longer ones are skipped.
+ *
+ * Every line is answered with one of
+ *
+ *      frame width height      followed by height rows of TETile.toString
+ *      diff count              followed by count lines "x y c", c the new tile's character
+ *      stream base64           the frame in Base64, usually a few dozen characters per move
+ *      ok                      for session commands
+ *      error message
+ *
+ * Usage: java byog.Core.Main --server [port] [saveDir]
+ *
+ * With -Dbyog.stats=true the server prints how well its world cache did when it is stopped.
+ */
+public class GameServer implements Closeable {
+    public static final int DEFAULT_PORT = 4817;
+    private static final Pattern SLOT_NAME = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    /* Reply modes of a session. */
+    private static final int FRAMES = 0;
+    private static final int DIFFS = 1;
+    private static final int STREAM = 2;
+    private static final int STREAM_KEYFRAME_INTERVAL = 300;
+    /* Longest line a session reads; keys of a longer one are never kept in memory. */
+    public static final int MAX_LINE = 64 * 1024;
+    /* Bots tend to replay the same seeds; their worlds are generated once. */
+    private static final int CACHED_WORLDS = 1024;
+    /* Default limit on sessions when they need platform threads. */
+    public static final int MAX_PLATFORM_SESSIONS = 256;
+    /* Looked up reflectively so the code still runs on Java 17, where it is null. */
+    private static final Method NEW_VIRTUAL_EXECUTOR = virtualExecutorFactory();
+
+    private final ServerSocket socket;
+    private final Path saveDir;
+    private final int maxSessions;
+    private final ExecutorService sessions;
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final WorldCache worlds = new WorldCache(CACHED_WORLDS, 64 << 20);
+
+    /**
+     * Binds to port on the loopback interface; port 0 picks a free one.
+     * @param saveDir where sessions save their games, or null to disable saving
+     */
+    public GameServer(int port, Path saveDir) throws IOException {
+        this(port, saveDir, NEW_VIRTUAL_EXECUTOR != null ? Integer.MAX_VALUE
+                : MAX_PLATFORM_SESSIONS);
+    }
+
+    /**
+     * Binds to port on the loopback interface; port 0 picks a free one.
+     * @param saveDir where sessions save their games, or null to disable saving
+     * @param maxSessions most sessions connected at once; later connections are refused
+     */
+    public GameServer(int port, Path saveDir, int maxSessions) throws IOException {
+        if (maxSessions < 1) {
+            throw new IllegalArgumentException("session limit must be positive: " + maxSessions);
+        }
+        this.socket = new ServerSocket(port, 512, InetAddress.getLoopbackAddress());
+        this.saveDir = saveDir;
+        this.maxSessions = maxSessions;
+        if (saveDir != null) {
+            Files.createDirectories(saveDir);
+        }
+        this.sessions = newSessionExecutor(maxSessions);
+    }
+
+    private static Method virtualExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /* Virtual threads where there are any, else up to maxSessions platform threads. */
+    private static ExecutorService newSessionExecutor(int maxSessions) {
+        if (NEW_VIRTUAL_EXECUTOR != null) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("can't create virtual threads", e);
+            }
+        }
+        // Never more than maxSessions tasks, as serve() refuses the rest, so nothing queues
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxSessions, maxSessions,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "game-session");
+                    t.setDaemon(true);
+                    return t;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /** @return the port the server listens on */
+    public int port() {
+        return socket.getLocalPort();
+    }
+
+    /** @return the cache of the worlds sessions start from, for its hit rate */
+    public WorldCache worlds() {
+        return worlds;
+    }
+
+    /** @return number of sessions currently connected */
+    public int activeSessions() {
+        return activeSessions.get();
+    }
+
+    /**
+     * Accepts connections until close() is called.
+     */
+    public void serve() throws IOException {
+        while (!socket.isClosed()) {
+            Socket client;
+            try {
+                client = socket.accept();
+            } catch (IOException e) {
+                if (socket.isClosed()) {
+                    return;
+                }
+                throw e;
+            }
+            if (activeSessions.incrementAndGet() > maxSessions) {
+                activeSessions.decrementAndGet();
+                refuse(client);
+                continue;
+            }
+            Session session = new Session(client, "session-" + UUID.randomUUID());
+            sessions.execute(session);
+        }
+    }
+
+    /* Tells a client past the session limit that the server is full and hangs up. */
+    private static void refuse(Socket client) {
+        try (Socket c = client) {
+            c.getOutputStream().write("error server full\n".getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // It sees the connection close instead
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+        sessions.shutdown();
+    }
+
+    private class Session implements Runnable {
+        private final Socket client;
+        private String slot;
+        private int mode = FRAMES;
+        private Map map;
+        /* Tiles as of the last reply, for diffs. */
+        private TETile[][] lastFrame;
+        private FrameEncoder encoder;
+
+        Session(Socket client, String slot) {
+            this.client = client;
+            this.slot = slot;
+        }
+
+        @Override
+        public void run() {
+            try (Socket c = client;
+                 BufferedReader in = new BufferedReader(new InputStreamReader(
+                         c.getInputStream(), StandardCharsets.UTF_8));
+                 Writer out = new BufferedWriter(new OutputStreamWriter(
+                         c.getOutputStream(), StandardCharsets.UTF_8))) {
+                StringBuilder line = new StringBuilder();
+                long length;
+                while ((length = readLine(in, line)) >= 0) {
+                    if (length > MAX_LINE) {
+                        out.write("error line longer than " + MAX_LINE + " characters\n");
+                    } else if (!handle(line.toString().trim(), out)) {
+                        break;
+                    }
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // The client went away; its game goes with it
+            } finally {
+                if (encoder != null) {
+                    encoder.close();
+                }
+                activeSessions.decrementAndGet();
+            }
+        }
+
+        /*
+         * Reads up to the next '\n' into line, keeping at most MAX_LINE characters. Returns the
+         * length of the whole line, or -1 at the end of the stream.
+         */
+        private long readLine(Reader in, StringBuilder line) throws IOException {
+            line.setLength(0);
+            long length = 0;
+            int c;
+            while ((c = in.read()) >= 0 && c != '\n') {
+                if (length++ < MAX_LINE) {
+                    line.append((char) c);
+                }
+            }
+            return c < 0 && length == 0 ? -1 : length;
+        }
+
+        /* Returns false to end the session. */
+        private boolean handle(String line, Writer out) throws IOException {
+            if (line.isEmpty()) {
+                out.write("error empty command\n");
+                return true;
+            }
+            if (line.charAt(0) == '!') {
+                command(line.substring(1).trim(), out);
+                return true;
+            }
+
+            char start = Character.toLowerCase(line.charAt(0));
+            if (start == 'e') {
+                return false;
+            }
+            CommandPlan plan;
+            try {
+                plan = start == 'n' || start == 'l' ? CommandPlan.compile(line)
+                        : CommandPlan.compileKeys(line);
+            } catch (IllegalArgumentException e) {
+                out.write("error " + e.getMessage() + "\n");
+                return true;
+            }
+            if (start == 'n') {
+                if (!plan.hasSeed()) {
+                    out.write("error no seed\n");
+                    return true;
+                }
+                map = worlds.get(plan.seed(), Game.WIDTH, Game.HEIGHT, GeneratorVersion.CLASSIC,
+                        GameRandom.Kind.LCG48);
+                newGame();
+            } else if (start == 'l') {
+                try {
+                    map = load();
+                } catch (IOException e) {
+                    map = null;
+                    out.write("error " + e.getMessage() + "\n");
+                    return true;
+                }
+                newGame();
+                if (map == null) {
+                    out.write("error no saved game in slot " + slot + "\n");
+                    return true;
+                }
+            } else if (map == null) {
+                out.write("error no game; start one with n<seed> or l\n");
+                return true;
+            }
+
+            Map played = map;
+            if (plan.run(played) < plan.size()) {
+                // The plan stopped at ":q"
+                map = null;
+                try {
+                    save(played);
+                } catch (IOException e) {
+                    out.write("error " + e.getMessage() + "\n");
+                    return true;
+                }
+            }
+            reply(played.view(), out);
+            return true;
+        }
+
+        private void command(String command, Writer out) throws IOException {
+            if (command.equals("frame")) {
+                mode = FRAMES;
+            } else if (command.equals("diff")) {
+                mode = DIFFS;
+                lastFrame = null;
+            } else if (command.equals("stream")) {
+                mode = STREAM;
+                if (encoder == null) {
+                    encoder = new FrameEncoder(STREAM_KEYFRAME_INTERVAL, true);
+                }
+                encoder.requestKeyframe();
+            } else if (command.startsWith("slot ")
+                    && SLOT_NAME.matcher(command.substring(5).trim()).matches()) {
+                slot = command.substring(5).trim();
+            } else {
+                out.write("error unknown command !" + command + "\n");
+                return;
+            }
+            out.write("ok\n");
+        }
+
+        /* The client's copy of the world is about to become useless. */
+        private void newGame() {
+            lastFrame = null;
+            if (encoder != null) {
+                encoder.requestKeyframe();
+            }
+        }
+
+        private void reply(WorldView world, Writer out) throws IOException {
+            int width = world.width();
+            int height = world.height();
+            if (mode == STREAM) {
+                ByteBuffer frame = encoder.encode(world);
+                out.write("stream ");
+                out.write(Base64.getEncoder().encodeToString(
+                        Arrays.copyOfRange(frame.array(), frame.position(), frame.limit())));
+                out.write('\n');
+                return;
+            }
+            if (mode == FRAMES) {
+                StringBuilder sb = new StringBuilder((width + 1) * height + 24);
+                sb.append("frame ").append(width).append(' ').append(height).append('\n');
+                for (int y = height - 1; y >= 0; y--) {
+                    for (int x = 0; x < width; x++) {
+                        sb.append(world.get(x, y).character());
+                    }
+                    sb.append('\n');
+                }
+                out.write(sb.toString());
+                return;
+            }
+
+            if (lastFrame == null || lastFrame.length != width || lastFrame[0].length != height) {
+                lastFrame = new TETile[width][height];
+            }
+            StringBuilder changes = new StringBuilder();
+            int count = 0;
+            for (int x = 0; x < width; x++) {
+                TETile[] column = lastFrame[x];
+                for (int y = 0; y < height; y++) {
+                    TETile tile = world.get(x, y);
+                    if (tile != column[y]) {
+                        column[y] = tile;
+                        changes.append(x).append(' ').append(y).append(' ')
+                                .append(tile.character()).append('\n');
+                        count++;
+                    }
+                }
+            }
+            out.write("diff " + count + "\n");
+            out.write(changes.toString());
+        }
+
+        private Path slotPath() {
+            return saveDir.resolve(slot + ".sav");
+        }
+
+        private void save(Map played) throws IOException {
+            if (saveDir != null) {
+                SaveFormat.write(played, slotPath());
+            }
+        }
+
+        private Map load() throws IOException {
+            if (saveDir == null || !Files.exists(slotPath())) {
+                return null;
+            }
+            return SaveFormat.read(slotPath());
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        Path saveDir = Paths.get(args.length > 1 ? args[1] : "./sessions");
+        try (GameServer server = new GameServer(port, saveDir)) {
+            System.out.println("serving games on localhost:" + server.port());
+            if (Game.PRINT_STATS) {
+                // The server runs until killed; report how well the world cache did on the way out
+                Runtime.getRuntime().addShutdownHook(new Thread(
+                        () -> System.out.println(server.worlds())));
+            }
+            server.serve();
+        }
+    }
+}
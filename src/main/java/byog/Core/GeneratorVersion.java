@@ -0,0 +1,22 @@
+package byog.Core;
+
+/**
+ * The ways Map.initialize() can generate a world. A seed only gives the same world again with
+ * the same version. CLASSIC is the default, and the one typed seeds and saved games expect.
+ */
+public enum GeneratorVersion {
+    /** Rooms linked region by region, the regions found by a flood fill of the whole grid. */
+    CLASSIC,
+    /**
+     * The same rooms, linked group by group, the groups of touching rooms tracked by RoomPlacer
+     * while the rooms are placed. Costs time in the number of rooms rather than in the area.
+     */
+    ROOM_GRAPH,
+    /**
+     * Groups of touching rooms linked along a minimum spanning tree of their nearest neighbours
+     * (see CorridorPlanner), each corridor taking the cheaper of its two L-shaped routes.
+     */
+    SPANNING_TREE,
+    /** SPANNING_TREE with some more of the nearest-neighbour links, making cycles. */
+    CYCLES
+}
@@ -0,0 +1,116 @@
+package byog.Core;
+
+import edu.princeton.cs.introcs.StdDraw;
+
+import java.awt.AWTEvent;
+import java.awt.Toolkit;
+import java.awt.event.AWTEventListener;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Blocking queue of the keys typed and mouse moves made in the StdDraw window, so the game can
+ * sleep until the player does something instead of polling StdDraw in a loop.
+ *
+ * Events are taken from AWT directly, since StdDraw only offers polling. Keys are delivered
+ * exactly as StdDraw.nextKeyTyped() would return them. Mouse moves are coalesced into a single
+ * pending MOUSE_MOVED event; read the position with StdDraw.mouseX() and StdDraw.mouseY().
+ */
+public class InputEvents implements AWTEventListener {
+    /** Returned by next() when the mouse moved. */
+    public static final int MOUSE_MOVED = -1;
+    /** Returned by next() when nothing happened before the timeout. */
+    public static final int TIMEOUT = -2;
+
+    private final LinkedBlockingQueue<Integer> events = new LinkedBlockingQueue<>();
+    private volatile boolean mousePending;
+    private boolean installed;
+
+    /**
+     * Starts listening to AWT events. Does nothing if already listening.
+     */
+    public synchronized void install() {
+        if (installed) {
+            return;
+        }
+        Toolkit.getDefaultToolkit().addAWTEventListener(this,
+                AWTEvent.KEY_EVENT_MASK | AWTEvent.MOUSE_MOTION_EVENT_MASK);
+        installed = true;
+    }
+
+    @Override
+    public void eventDispatched(AWTEvent event) {
+        int id = event.getID();
+        if (id == KeyEvent.KEY_TYPED) {
+            events.add((int) ((KeyEvent) event).getKeyChar());
+        } else if (id == MouseEvent.MOUSE_MOVED || id == MouseEvent.MOUSE_DRAGGED) {
+            if (!mousePending) {
+                mousePending = true;
+                events.add(MOUSE_MOVED);
+            }
+        }
+    }
+
+    /**
+     * Waits for the next event.
+     * @param timeoutMillis how long to wait, or a negative number to wait forever
+     * @return the typed key, MOUSE_MOVED or TIMEOUT
+     */
+    public int next(long timeoutMillis) {
+        return next(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Waits for the next event, like next(long) but with the timeout in any unit.
+     * @param timeout how long to wait, or a negative number to wait forever
+     * @return the typed key, MOUSE_MOVED or TIMEOUT
+     */
+    public int next(long timeout, TimeUnit unit) {
+        Integer event;
+        try {
+            if (timeout < 0) {
+                event = events.take();
+            } else {
+                event = events.poll(timeout, unit);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return TIMEOUT;
+        }
+
+        if (event == null) {
+            return TIMEOUT;
+        }
+        if (event == MOUSE_MOVED) {
+            mousePending = false;
+        } else {
+            discardStdDrawKeys();
+        }
+        return event;
+    }
+
+    /**
+     * Blocks until a key is typed, skipping mouse moves.
+     * @return the typed key
+     */
+    public char nextKey() {
+        while (true) {
+            int event = next(-1);
+            if (event >= 0) {
+                return (char) event;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return 0;
+            }
+        }
+    }
+
+    /* StdDraw queues every key as well; it's never read, so keep it from growing. */
+    private static void discardStdDrawKeys() {
+        while (StdDraw.hasNextKeyTyped()) {
+            StdDraw.nextKeyTyped();
+        }
+    }
+}
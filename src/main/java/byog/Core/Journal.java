@@ -0,0 +1,365 @@
+package byog.Core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only log of the keys applied to a Map. Since Map.initialize() is fully determined by
+ * the seed, a game can be saved as its seed plus this log and restored by generating the world
+ * again and replaying the keys.
+ *
+ * The file holds a header (magic "PMJL", version, seed, width, height) followed by one byte per
+ * record: a key typed in normal mode, a key with the high bit set for ninja mode, or SAVE_MARK
+ * where the player saved. Records are buffered and forced to disk every SYNC_BATCH records or
+ * on sync(). Every SNAPSHOT_INTERVAL records a SaveFormat snapshot of the map is written next to
+ * the journal, so restoring never replays more than that many keys.
+ *
+ * A new game is journaled to path + ".new" and only replaces the journal at path when it is
+ * saved for the first time, so starting a game never destroys the previous save. An unsaved
+ * game can still be recovered from the ".new" file after a crash.
+ */
+public class Journal implements Closeable {
+    private static final int MAGIC = 0x504D4A4C;      // "PMJL"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 2 + 8 + 4 + 4;
+    private static final byte SAVE_MARK = 1;
+    private static final int NINJA_BIT = 0x80;
+    private static final int SYNC_BATCH = 64;
+    private static final int SNAPSHOT_INTERVAL = 4096;
+
+    private final Path path;
+    private Path livePath;
+    private FileChannel channel;
+    private final long seed;
+    private final ByteBuffer pending = ByteBuffer.allocate(SYNC_BATCH);
+    /* Number of records in the journal, including the ones still pending. */
+    private long records;
+    /* True when records were written to the channel but not forced to disk yet. */
+    private boolean unforced;
+    private long lastSnapshot;
+
+    private Journal(Path path, Path livePath, FileChannel channel, long seed, long records) {
+        this.path = path;
+        this.livePath = livePath;
+        this.channel = channel;
+        this.seed = seed;
+        this.records = records;
+        this.lastSnapshot = records;
+    }
+
+    /**
+     * Starts a journal for a new world generated from seed. It replaces the journal at path on
+     * the first save().
+     */
+    public static Journal create(Path path, long seed, int width, int height) throws IOException {
+        Path newPath = newGamePath(path);
+        Files.deleteIfExists(snapshotPath(newPath));
+        FileChannel ch = FileChannel.open(newPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.READ,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putShort(VERSION).putLong(seed).putInt(width).putInt(height);
+        header.flip();
+        while (header.hasRemaining()) {
+            ch.write(header);
+        }
+        ch.force(false);
+        return new Journal(path, newPath, ch, seed, 0);
+    }
+
+    /**
+     * A map restored from a journal together with the journal, open for appending.
+     */
+    public static class Restored {
+        public final Map map;
+        public final Journal journal;
+
+        Restored(Map map, Journal journal) {
+            this.map = map;
+            this.journal = journal;
+        }
+    }
+
+    /**
+     * Restores the game in the journal at path.
+     * @param toLastSave true to stop at the last save mark and drop the keys after it, false to
+     *                   replay everything that reached the disk, e.g. after a crash
+     */
+    public static Restored open(Path path, boolean toLastSave) throws IOException {
+        FileChannel ch = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(ch, header, 0);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("not a journal: " + path);
+            }
+            short version = header.getShort();
+            if (version != VERSION) {
+                throw new IOException("unsupported journal version " + version);
+            }
+            long seed = header.getLong();
+            int width = header.getInt();
+            int height = header.getInt();
+
+            long size = ch.size() - HEADER_SIZE;
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("journal too large: " + size + " records");
+            }
+            ByteBuffer log = ByteBuffer.allocate((int) size);
+            readFully(ch, log, HEADER_SIZE);
+            byte[] keys = log.array();
+
+            int end = keys.length;
+            if (toLastSave) {
+                end = 0;
+                for (int i = keys.length - 1; i >= 0; i--) {
+                    if (keys[i] == SAVE_MARK) {
+                        end = i + 1;
+                        break;
+                    }
+                }
+            }
+
+            Map map = null;
+            int from = 0;
+            Snapshot snapshot = readSnapshot(path, seed);
+            if (snapshot != null && snapshot.records <= end) {
+                map = snapshot.map;
+                from = (int) snapshot.records;
+            }
+            if (map == null) {
+                map = new Map(width, height);
+                map.setRandom(seed);
+                map.initialize();
+            }
+            for (int i = from; i < end; i++) {
+                replay(map, keys[i]);
+            }
+
+            if (end < keys.length) {
+                // Drop the keys after the last save, along with a snapshot that includes them
+                ch.truncate(HEADER_SIZE + end);
+                ch.force(false);
+                if (snapshot != null && snapshot.records > end) {
+                    Files.deleteIfExists(snapshotPath(path));
+                }
+            }
+            ch.position(HEADER_SIZE + end);
+            return new Restored(map, new Journal(path, path, ch, seed, end));
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    private static void replay(Map map, byte record) {
+        if (record == SAVE_MARK) {
+            return;
+        }
+        char key = (char) (record & ~NINJA_BIT & 0xFF);
+        if ((record & NINJA_BIT) != 0) {
+            map.ninjaControl(key);
+        } else {
+            map.control(key);
+        }
+    }
+
+    /**
+     * Records a key that was just applied to map with control (or ninjaControl if ninja).
+     * Keys outside ASCII are not moves and are ignored.
+     */
+    public void append(char key, boolean ninja, Map map) throws IOException {
+        append(key, 1, ninja, map);
+    }
+
+    /**
+     * Records count presses of key that were just applied to map together, e.g. by Map.move.
+     */
+    public void append(char key, int count, boolean ninja, Map map) throws IOException {
+        if (key >= NINJA_BIT || key == SAVE_MARK) {
+            return;
+        }
+        byte record = (byte) (ninja ? key | NINJA_BIT : key);
+        for (int i = 0; i < count; i++) {
+            put(record);
+        }
+        // Only now does map reflect every record, so this is the earliest a snapshot may be taken
+        if (records - lastSnapshot >= SNAPSHOT_INTERVAL) {
+            snapshot(map);
+        }
+    }
+
+    /**
+     * Records the moves of plan before operation end, which were just applied to map together,
+     * e.g. by CommandPlan.run, in one write. They are forced to disk with the next sync.
+     */
+    public void append(CommandPlan plan, int end, Map map) throws IOException {
+        int moves = 0;
+        for (int i = 0; i < end; i++) {
+            moves += plan.count(i);
+        }
+        pending.flip();
+        ByteBuffer buf = ByteBuffer.allocate(pending.remaining() + moves);
+        buf.put(pending);
+        pending.clear();
+        for (int i = 0; i < end; i++) {
+            byte record = (byte) plan.key(i);
+            for (int j = 0; j < plan.count(i); j++) {
+                buf.put(record);
+            }
+        }
+        buf.flip();
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        unforced = true;
+        records += moves;
+        if (records - lastSnapshot >= SNAPSHOT_INTERVAL) {
+            snapshot(map);
+        }
+    }
+
+    /**
+     * Marks the current state as saved and forces the journal to disk.
+     */
+    public void save() throws IOException {
+        put(SAVE_MARK);
+        sync();
+        if (!livePath.equals(path)) {
+            promote();
+        }
+    }
+
+    /* Moves a new game's journal and snapshot over the saved ones at path. */
+    private void promote() throws IOException {
+        channel.close();
+        Path snap = snapshotPath(livePath);
+        if (Files.exists(snap)) {
+            Files.move(snap, snapshotPath(path), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } else {
+            Files.deleteIfExists(snapshotPath(path));
+        }
+        Files.move(livePath, path, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        livePath = path;
+        channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void put(byte record) throws IOException {
+        pending.put(record);
+        records++;
+        if (!pending.hasRemaining()) {
+            sync();
+        }
+    }
+
+    /**
+     * Writes pending records and forces them to disk. Does nothing if every record is there.
+     */
+    public void sync() throws IOException {
+        if (pending.position() == 0 && !unforced) {
+            return;
+        }
+        pending.flip();
+        while (pending.hasRemaining()) {
+            channel.write(pending);
+        }
+        pending.clear();
+        channel.force(false);
+        unforced = false;
+    }
+
+    /**
+     * Writes a snapshot of map, which must reflect every record appended so far.
+     */
+    public void snapshot(Map map) throws IOException {
+        sync();
+        ByteBuffer state = SaveFormat.encode(map);
+        ByteBuffer buf = ByteBuffer.allocate(8 + 8 + state.remaining());
+        buf.putLong(seed).putLong(records).put(state);
+        buf.flip();
+
+        Path snap = snapshotPath(livePath);
+        Path tmp = snap.resolveSibling(snap.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+            ch.force(false);
+        }
+        Files.move(tmp, snap, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        lastSnapshot = records;
+    }
+
+    private static class Snapshot {
+        final long records;
+        final Map map;
+
+        Snapshot(long records, Map map) {
+            this.records = records;
+            this.map = map;
+        }
+    }
+
+    /* Returns null if there is no usable snapshot; a damaged one just means a longer replay. */
+    private static Snapshot readSnapshot(Path path, long seed) {
+        Path snap = snapshotPath(path);
+        if (!Files.exists(snap)) {
+            return null;
+        }
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(snap));
+            if (buf.remaining() < 16 || buf.getLong() != seed) {
+                return null;
+            }
+            long records = buf.getLong();
+            return new Snapshot(records, SaveFormat.decode(buf.slice()));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static Path snapshotPath(Path path) {
+        return path.resolveSibling(path.getFileName() + ".snap");
+    }
+
+    /**
+     * @return where a new game journaled to path lives until its first save
+     */
+    public static Path newGamePath(Path path) {
+        return path.resolveSibling(path.getFileName() + ".new");
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long position)
+            throws IOException {
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, position + buf.position());
+            if (n < 0) {
+                throw new IOException("journal truncated");
+            }
+        }
+        buf.flip();
+    }
+
+    /** @return the seed the journaled world was generated from */
+    public long seed() {
+        return seed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+}
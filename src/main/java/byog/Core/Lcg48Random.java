@@ -0,0 +1,66 @@
+package byog.Core;
+
+/**
+ * The 48-bit linear congruential generator of java.util.Random, reimplemented so that its state
+ * can be read and restored. It produces exactly the same numbers as new Random(seed), so worlds
+ * generated with it are the same as before. Unlike Random it is not thread-safe.
+ */
+public class Lcg48Random extends GameRandom {
+    private static final long serialVersionUID = 1L;
+
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    private long state;
+
+    public Lcg48Random(long seed) {
+        super(seed);        // calls setSeed(seed)
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        state = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    @Override
+    protected int next(int bits) {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+
+    /**
+     * @return the current 48-bit state, to be passed to setState later
+     */
+    public long getState() {
+        return state;
+    }
+
+    public void setState(long state) {
+        this.state = state & MASK;
+    }
+
+    @Override
+    public Kind kind() {
+        return Kind.LCG48;
+    }
+
+    /* The child's seed is mixed, since nearby LCG seeds give correlated streams. */
+    @Override
+    public GameRandom split() {
+        return new Lcg48Random(mix(nextLong() + GOLDEN_GAMMA));
+    }
+
+    @Override
+    public long[] state() {
+        return new long[] {state};
+    }
+
+    @Override
+    public void setState(long[] state) {
+        if (state.length != 1) {
+            throw new IllegalArgumentException("LCG48 state has 1 long, not " + state.length);
+        }
+        setState(state[0]);
+    }
+}
@@ -2,13 +2,18 @@ package byog.Core;
 
 import byog.TileEngine.TETile;
 
+import java.io.IOException;
+import java.util.Arrays;
+
 /** This is the main entry point for the program. This class simply parses
  *  the command line inputs, and lets the byog.Core.Game class take over
- *  in either keyboard or input string mode.
+ *  in either keyboard or input string mode, or starts a GameServer with --server.
  */
 public class Main {
-    public static void main(String[] args) {
-        if (args.length > 1) {
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--server")) {
+            GameServer.main(Arrays.copyOfRange(args, 1, args.length));
+        } else if (args.length > 1) {
             System.out.println("Can only have one argument - the input string");
             System.exit(0);
         } else if (args.length == 1) {
@@ -1,38 +1,85 @@
 package byog.Core;
 
 import byog.TileEngine.TETile;
+import byog.TileEngine.TileRegistry;
 import byog.TileEngine.Tileset;
+import byog.TileEngine.WorldView;
 
-import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Random;
 
-/*TODO: Replace every TETile[][] argument with instance variable*/
-
-public class Map implements Serializable {
-    private final TETile[][] floorTiles;
+/**
+ * A generated world. Tiles are kept as TileRegistry ids in a TileStore, a flat byte grid on the
+ * heap by default; TETile[][] arrays are only built by getFloorTiles() for rendering.
+ */
+public class Map {
+    private final TileStore floorTiles;
     private final int WIDTH;
     private final int HEIGHT;
 
     private Position playerPos;
 
-    private final ArrayList<Position> coinsPosition = new ArrayList<>();
+    private final CoinIndex coins;
+
+    /* Coins placed by initialize(), or every floor cell if there are fewer. */
+    private int coinCount = 15;
+
+    private final byte _default = TileRegistry.FLOOR;
+
+    GameRandom random;
+
+    private GeneratorVersion generator = GeneratorVersion.CLASSIC;
+
+    /* Chance of every extra link of GeneratorVersion.CYCLES. */
+    private static final double CYCLE_CHANCE = 0.3;
+
+    private View view;
 
-    private final TETile _default = Tileset.FLOOR;
+    /* Slide distances for ninjaControl and long moves, built on the first that needs them. */
+    private SlideTable slides;
 
-    Random random;
+    /*
+     * One labeler per thread, so its buffers are reused by every linkRegions on that thread, e.g.
+     * by the worlds of a BatchGenerator worker. They stay as large as the largest world labeled.
+     */
+    private static final ThreadLocal<RegionLabeler> LABELER =
+            ThreadLocal.withInitial(RegionLabeler::new);
+
+    /* Longest move walked tile by tile; a longer one builds the slide table. */
+    private static final int DIRECT_RUN = 64;
+
+    /* Bumped whenever tiles change, so cached navigation data can tell it is stale. */
+    private int tileVersion;
 
     public Map(int WIDTH, int HEIGHT) {
-        this.WIDTH = WIDTH;
-        this.HEIGHT = HEIGHT;
-        floorTiles = new TETile[WIDTH][HEIGHT];
-        fillWithNothing(floorTiles);
-        random = new Random();
+        this(new ArrayTileStore(WIDTH, HEIGHT));
+    }
+
+    /**
+     * Creates a map whose tiles are read from and written to store, e.g. a MappedTileStore.
+     * Tiles already in the store are kept; player and coins are not part of the store.
+     *
+     * A store off the heap gets no per-tile tables on the heap either: coins take memory per
+     * coin, moves walk the tiles instead of using a slide table, and initialize() can't use
+     * GeneratorVersion.CLASSIC, whose region labeling needs 12 bytes per tile. Generate such
+     * worlds with ChunkedGenerator.
+     *
+     * @throws IllegalArgumentException if store has more than Integer.MAX_VALUE tiles, as
+     *         cells are numbered x + y * width with an int
+     */
+    public Map(TileStore store) {
+        if ((long) store.width() * store.height() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("world of " + store.width() + "x" + store.height()
+                    + " has more tiles than a Map can number");
+        }
+        this.WIDTH = store.width();
+        this.HEIGHT = store.height();
+        floorTiles = store;
+        coins = new CoinIndex(WIDTH, HEIGHT);
+        random = new Lcg48Random(new Random().nextLong());
         playerPos = new Position(0, 0);
     }
 
-    private static class Position implements Serializable {
+    private static class Position {
         protected int X;
         protected int Y;
 
@@ -46,9 +93,14 @@ public class Map implements Serializable {
             Position pos = (Position) obj;
             return pos.X == this.X && pos.Y == this.Y;
         }
+
+        @Override
+        public int hashCode() {
+            return 31 * X + Y;
+        }
     }
 
-    private static class Room {
+    static class Room {
         protected int width;
         protected int height;
         protected int X;
@@ -62,59 +114,87 @@ public class Map implements Serializable {
         }
     }
 
+    /**
+     * Generates the world from the current random generator. The generation phases below are
+     * package-private so the benchmarks can time them one by one, in this order.
+     * @throws UnsupportedOperationException for GeneratorVersion.CLASSIC on a store off the heap
+     */
     public TETile[][] initialize() {
+        if (generator == GeneratorVersion.CLASSIC && floorTiles.offHeap()) {
+            throw new UnsupportedOperationException("CLASSIC labels every tile on the heap; "
+                    + "generate worlds off the heap with ChunkedGenerator");
+        }
+        slides = null;
+        tileVersion++;
 
         int roomNum = RandomUtils.uniform(random, 25, 30);
 
         // List of rooms, recording Height, Width, X and Y parameters of a room
         Room[] roomsList = createRoomScheme(roomNum);
 
-        // Update the floorTiles by filling positions that room list indicates with _default (Tileset.FLOOR)
-        drawRooms(roomsList, floorTiles);
+        // Fill the cells of every room in the list with _default, TileRegistry.FLOOR
+        drawRooms(roomsList);
 
         // Update the floorTiles by linking adjacent rooms
-        linkRegions(floorTiles);
-
-        drawWalls(floorTiles);
+        if (generator == GeneratorVersion.ROOM_GRAPH) {
+            linkRooms(roomsList);
+        } else if (generator == GeneratorVersion.SPANNING_TREE) {
+            linkSpanning(roomsList, 0);
+        } else if (generator == GeneratorVersion.CYCLES) {
+            linkSpanning(roomsList, CYCLE_CHANCE);
+        } else {
+            linkRegions();
+        }
 
-        drawDecoration(floorTiles);
+        // Walls, grass, door and coins, in two passes
+        postProcess();
 
-        drawDoor(floorTiles);
+        return toTiles();
+    }
 
-        createCoins(floorTiles);
+    private int index(int x, int y) {
+        return x + y * WIDTH;
+    }
 
-        return floorTiles;
+    private byte tileAt(int x, int y) {
+        return floorTiles.get(x, y);
     }
 
-    private void createCoins(TETile[][] floorTiles) {
-        ArrayList<Position> list = new ArrayList<>();
-        for (int x = 0; x < WIDTH; x++) {
-            for (int y = 0; y < HEIGHT; y++) {
-                if (floorTiles[x][y].description().equals("floor")
-                        || floorTiles[x][y].description().equals("grass")) {
-                    list.add(new Position(x, y));
-                }
-            }
+    private void setTile(int x, int y, byte id) {
+        floorTiles.set(x, y, id);
+        tileVersion++;
+        if (slides != null) {
+            slides.update(x, y);
         }
+    }
 
-        int count = Math.min(list.size(), 15);
-
-        for (int i = 0; i < count; i++) {
-            int randomIndex = random.nextInt(list.size());
-            coinsPosition.add(list.get(randomIndex));
-            list.remove(randomIndex);
-        }
+    private boolean isFloorOrGrass(int x, int y) {
+        byte id = floorTiles.get(x, y);
+        return id == TileRegistry.FLOOR || id == TileRegistry.GRASS;
+    }
 
+    /**
+     * Surrounds floors with walls, turns some floors into grass, puts the door and the player
+     * next to it, and places coins, in two passes over the tiles (see PostProcessor).
+     */
+    void postProcess() {
+        PostProcessor post = new PostProcessor(floorTiles);
+        post.run(random);
+        tilesChanged();
+        if (post.doorX() >= 0) {
+            playerPos = new Position(post.doorX(), post.doorY() + 1);
+        }
+        coins.place(post.coinCandidates(), coinCount, random);
     }
 
-    private void drawDoor(TETile[][] floorTiles) {
+    void drawDoor() {
         for (int x = WIDTH / 3; x < WIDTH * 2 / 3; x++) {
             for (int y = 0; y < HEIGHT / 2; y++) {
-                boolean isWall = floorTiles[x][y].description().equals("wall");
-                boolean upperValid = floorTiles[x][y + 1].description().equals("floor") || floorTiles[x][y + 1].description().equals("grass");
-                boolean lowerValid = y == 0 || floorTiles[x][y - 1].description().equals("nothing");
+                boolean isWall = tileAt(x, y) == TileRegistry.WALL;
+                boolean upperValid = isFloorOrGrass(x, y + 1);
+                boolean lowerValid = y == 0 || tileAt(x, y - 1) == TileRegistry.NOTHING;
                 if (isWall && upperValid && lowerValid) {
-                    floorTiles[x][y] = Tileset.LOCKED_DOOR;
+                    setTile(x, y, TileRegistry.LOCKED_DOOR);
                     playerPos = new Position(x, y + 1);
                     return;
                 }
@@ -122,320 +202,487 @@ public class Map implements Serializable {
         }
     }
 
-    private void drawDecoration(TETile[][] floorTiles) {
-        for (int i = 0; i < floorTiles.length; i++) {
-            for (int j = 0; j < floorTiles[0].length; j++) {
-                if (floorTiles[i][j].description().equals("floor") && RandomUtils.gaussian(random) > 0.8) {
-                    floorTiles[i][j] = Tileset.GRASS;
-                }
-            }
+    /**
+     * Update the floor tiles by linking adjacent non-null tiles group
+     */
+    void linkRegions() {
+        // Region IDs are 1 2 3 ... in column-by-column order of their first cell, 0 means nothing
+        RegionLabeler labeler = LABELER.get();
+        int regionNum = labeler.label(floorTiles);
+
+        for (int i = 1; i < regionNum; i++) {
+            int c1 = labeler.regionCell(i, RandomUtils.uniform(random, labeler.regionSize(i)));
+            int c2 = labeler.regionCell(i + 1,
+                    RandomUtils.uniform(random, labeler.regionSize(i + 1)));
+            linkTwoPosition(new Position(c1 % WIDTH, c1 / WIDTH),
+                    new Position(c2 % WIDTH, c2 / WIDTH));
+        }
+    }
 
+    /**
+     * Links the groups of touching rooms in order, as linkRegions does with regions, but with
+     * the groups known from the rooms alone. Corridors cutting through other rooms may join
+     * groups beyond what is needed; the world is connected all the same.
+     */
+    void linkRooms(Room[] rooms) {
+        RoomPlacer placer = new RoomPlacer(WIDTH, HEIGHT);
+        for (Room room : rooms) {
+            placer.add(room);
+        }
+
+        int[][] groups = placer.components();
+        for (int i = 1; i < groups.length; i++) {
+            Room a = rooms[groups[i - 1][RandomUtils.uniform(random, groups[i - 1].length)]];
+            Room b = rooms[groups[i][RandomUtils.uniform(random, groups[i].length)]];
+            linkTwoPosition(randomCell(a), randomCell(b));
         }
     }
 
-    private void drawWalls(TETile[][] tiles) {
-        for (int i = 0; i < tiles.length; i++) {
-            for (int j = 0; j < tiles[0].length; j++) {
-                if (tiles[i][j] == _default) {
-                    drawWallAround(new Position(i, j), tiles);
-                }
+    /**
+     * Links the groups of touching rooms along the links planned by CorridorPlanner. Each link
+     * joins the cells of its two rooms nearest to each other, by whichever L-shaped corridor
+     * digs fewer new tiles.
+     */
+    void linkSpanning(Room[] rooms, double loopChance) {
+        RoomPlacer placer = new RoomPlacer(WIDTH, HEIGHT);
+        for (Room room : rooms) {
+            placer.add(room);
+        }
+
+        int[] links = new CorridorPlanner(loopChance).plan(rooms, placer.components(), random);
+        for (int i = 0; i < links.length; i += 2) {
+            Room a = rooms[links[i]];
+            Room b = rooms[links[i + 1]];
+            Position from = nearestCell(a, b);
+            Position to = nearestCell(b, a);
+            if (digCost(from, to) <= digCost(to, from)) {
+                linkTwoPosition(from, to);
+            } else {
+                linkTwoPosition(to, from);
             }
         }
     }
 
-    private void drawWallAround(Position p, TETile[][] tiles) {
-        int x = p.X;
-        int y = p.Y;
-
-        if (x - 1 >= 0 && tiles[x - 1][y].description().equals("nothing")) {
-            tiles[x - 1][y] = Tileset.WALL;
-        }
+    /* The cell of room nearest to the centre of other. */
+    private static Position nearestCell(Room room, Room other) {
+        int x = Math.max(room.X, Math.min(room.X + room.width - 1, other.X + other.width / 2));
+        int y = Math.max(room.Y, Math.min(room.Y + room.height - 1, other.Y + other.height / 2));
+        return new Position(x, y);
+    }
 
-        if (x + 1 < tiles.length && tiles[x + 1][y].description().equals("nothing")) {
-            tiles[x + 1][y] = Tileset.WALL;
+    /* Number of empty tiles linkTwoPosition(A, B) would dig. */
+    private int digCost(Position A, Position B) {
+        int cost = 0;
+        for (int y = Math.min(A.Y, B.Y); y <= Math.max(A.Y, B.Y); y++) {
+            if (tileAt(A.X, y) == TileRegistry.NOTHING) {
+                cost++;
+            }
         }
-
-        if (y - 1 >= 0 && tiles[x][y - 1].description().equals("nothing")) {
-            tiles[x][y - 1] = Tileset.WALL;
+        for (int x = Math.min(A.X, B.X); x <= Math.max(A.X, B.X); x++) {
+            if (x != A.X && tileAt(x, B.Y) == TileRegistry.NOTHING) {
+                cost++;
+            }
         }
+        return cost;
+    }
 
-        if (y + 1 < tiles[0].length && tiles[x][y + 1].description().equals("nothing")) {
-            tiles[x][y + 1] = Tileset.WALL;
-        }
+    private Position randomCell(Room room) {
+        return new Position(room.X + RandomUtils.uniform(random, room.width),
+                room.Y + RandomUtils.uniform(random, room.height));
+    }
 
-        if (x - 1 >= 0 && y - 1 >= 0 && tiles[x - 1][y - 1].description().equals("nothing")) {
-            tiles[x - 1][y - 1] = Tileset.WALL;
+    /**
+     * Update the map-tiles by linking two position
+     */
+    private void linkTwoPosition(Position A, Position B) {
+        if (B.Y >= A.Y) {
+            for (int i = A.Y; i <= B.Y; i++) {
+                setTile(A.X, i, _default);
+            }
+        } else {
+            for (int i = B.Y; i <= A.Y; i++) {
+                setTile(A.X, i, _default);
+            }
         }
 
-        if (x + 1 < tiles.length && y - 1 >= 0 && tiles[x + 1][y - 1].description().equals("nothing")) {
-            tiles[x + 1][y - 1] = Tileset.WALL;
+        if (B.X >= A.X) {
+            for (int i = A.X; i <= B.X; i++) {
+                setTile(i, B.Y, _default);
+            }
+        } else {
+            for (int i = B.X; i <= A.X; i++) {
+                setTile(i, B.Y, _default);
+            }
         }
 
-        if (x - 1 >= 0 && y + 1 < tiles[0].length && tiles[x - 1][y + 1].description().equals("nothing")) {
-            tiles[x - 1][y + 1] = Tileset.WALL;
-        }
 
-        if (x + 1 < tiles.length && y + 1 < tiles[0].length && tiles[x + 1][y + 1].description().equals("nothing")) {
-            tiles[x + 1][y + 1] = Tileset.WALL;
-        }
     }
 
     /**
-     * Update the input tiles by linking adjacent non-null tiles group
+     * @return Return a list of room instances
      */
-    private void linkRegions(TETile[][] tiles) {
-        // UnionMap will only contain small number of region ID. e.g. -1 1 2 3 ... but no 0
-        Tuple digitUnionMap = unionMap(tilesToDigitMap(tiles));
-
-        int[][] unionMap = digitUnionMap.unionMap;
-        int regionNum = digitUnionMap.regionNum;
+    Room[] createRoomScheme(int roomNum) {
+        Room[] rooms = new Room[roomNum];
 
-        List<Position>[] regions = new List[regionNum];
+        for (int i = 0; i < roomNum; i++) {
+            int randX = RandomUtils.uniform(random, 1, WIDTH - 11);
+            int randY = RandomUtils.uniform(random, 1, HEIGHT - 11);
+            int randWidth = RandomUtils.uniform(random, 2, 10);
+            int randHeight = RandomUtils.uniform(random, 2, 10);
 
-        for (int i = 0; i < regionNum; i++) {
-            regions[i] = new ArrayList<>();
+            rooms[i] = new Room(randWidth, randHeight, randX, randY);
         }
 
-        for (int i = 0; i < unionMap.length; i++) {
-            for (int j = 0; j < unionMap[0].length; j++) {
-                if (unionMap[i][j] != -1) {
-                    regions[unionMap[i][j] - 1].add(new Position(i, j));
-                }
-            }
-        }
+        return rooms;
+    }
+
 
-        for (int i = 0; i < regionNum - 1; i++) {
-            Position p1 = regions[i].get(RandomUtils.uniform(random, regions[i].size()));
-            Position p2 = regions[i + 1].get(RandomUtils.uniform(random, regions[i + 1].size()));
-            linkTwoPosition(p1, p2, tiles);
+    /**
+     * Update the tiles by adding rooms in Room[]
+     */
+    void drawRooms(Room[] rooms) {
+        for (Room room : rooms) {
+            for (int y = room.Y; y < room.height + room.Y; y++) {
+                floorTiles.fillRow(y, room.X, room.X + room.width, _default);
+            }
         }
     }
 
     /**
-     * Union intersecting rooms and update digitMap, return a Tuple.
+     * Sets how many coins initialize() places; 15 unless changed.
      */
-    private Tuple unionMap(int[][] digitMap) {
-        int[][] unionMap = digitMap;
-
-        int numOfRegions = 0;
-
-        for (int i = 0; i < digitMap.length; i++) {
-            for (int j = 0; j < digitMap[0].length; j++) {
-                if (digitMap[i][j] == 0) {
-                    numOfRegions++;
-                    floodFill(unionMap, i, j, 0, numOfRegions);
-                }
-            }
+    public void setCoinCount(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("negative coin count: " + count);
         }
+        coinCount = count;
+    }
 
-        return new Tuple(unionMap, numOfRegions);
+    int coinCount() {
+        return coinCount;
     }
 
-    private class Tuple {
-        int[][] unionMap;
-        int regionNum;
+    /** @return number of coins still on the map */
+    public int coinsLeft() {
+        return coins.size();
+    }
 
-        public Tuple(int[][] unionMap, int regionNum) {
-            this.unionMap = unionMap;
-            this.regionNum = regionNum;
-        }
+    /**
+     * Sets how initialize() generates the world; GeneratorVersion.CLASSIC unless changed.
+     */
+    public void setGenerator(GeneratorVersion generator) {
+        this.generator = generator;
+    }
+
+    public GeneratorVersion generator() {
+        return generator;
     }
 
     /**
-     * Update digit map. Find and replace all adjacent source-like tile by recursion
+     * Seeds the generator with a GameRandom.Kind.LCG48, which gives the worlds seeds always gave.
      */
-    private void floodFill(int[][] map, int source_x, int source_y, int source, int target) {
-        // If the ptr is out of bound, no replacement
-        if (source_x < 0 || source_x >= WIDTH - 1 || source_y < 0 || source_y >= HEIGHT - 1) return;
-        // If the value on ptr is not empty (0), no replacement
-        if (map[source_x][source_y] != source) return;
+    public void setRandom(long seed) {
+        setRandom(seed, GameRandom.Kind.LCG48);
+    }
+
+    public void setRandom(long seed, GameRandom.Kind kind) {
+        this.random = GameRandom.create(kind, seed);
+    }
 
-        map[source_x][source_y] = target;
+    /* Accessors used by SaveFormat to write and restore a Map. */
 
-        floodFill(map, source_x + 1, source_y, source, target);
-        floodFill(map, source_x, source_y + 1, source, target);
-        floodFill(map, source_x - 1, source_y, source, target);
-        floodFill(map, source_x, source_y - 1, source, target);
+    int width() {
+        return WIDTH;
     }
 
+    int height() {
+        return HEIGHT;
+    }
 
-    /**
-     * @return Return int[][] matrix where -1 means nothing, 0 means floor
-     */
-    private int[][] tilesToDigitMap(TETile[][] tiles) {
-        int[][] digitMap = new int[WIDTH][HEIGHT];
-        for (int x = 0; x < WIDTH; x++) {
-            for (int y = 0; y < HEIGHT; y++) {
-                if (tiles[x][y].description().equals("nothing")) {
-                    digitMap[x][y] = -1;        // -1 means nothing
-                } else {
-                    digitMap[x][y] = 0;         // 0 means unchecked floor
-                }
-            }
-        }
-        return digitMap;
+    TileStore tileStore() {
+        return floorTiles;
     }
 
     /**
-     * Update the map-tiles by linking two position
+     * @return a copy of the tile ids, indexed by x + y * width()
      */
-    private void linkTwoPosition(Position A, Position B, TETile[][] tiles) {
-        if (B.Y >= A.Y) {
-            for (int i = A.Y; i <= B.Y; i++) {
-                tiles[A.X][i] = _default;
-            }
-        } else {
-            for (int i = B.Y; i <= A.Y; i++) {
-                tiles[A.X][i] = _default;
+    byte[] tileIds() {
+        byte[] ids = new byte[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                ids[x + y * WIDTH] = floorTiles.get(x, y);
             }
         }
+        return ids;
+    }
 
-        if (B.X >= A.X) {
-            for (int i = A.X; i <= B.X; i++) {
-                tiles[i][B.Y] = _default;
-            }
-        } else {
-            for (int i = B.X; i <= A.X; i++) {
-                tiles[i][B.Y] = _default;
+    void setTileIds(byte[] ids) {
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                floorTiles.set(x, y, ids[x + y * WIDTH]);
             }
         }
+        tilesChanged();
+    }
+
+    /**
+     * Drops data derived from the tiles, for code that wrote to tileStore() directly.
+     */
+    void tilesChanged() {
+        slides = null;
+        tileVersion++;
+    }
 
+    /**
+     * @return a number that changes whenever any tile changes
+     */
+    int tileVersion() {
+        return tileVersion;
+    }
 
+    int playerX() {
+        return playerPos.X;
     }
 
+    int playerY() {
+        return playerPos.Y;
+    }
 
-    private void fillWithNothing(TETile[][] tiles) {
-        for (int i = 0; i < WIDTH; i++) {
-            for (int j = 0; j < HEIGHT; j++) {
-                if (tiles[i][j] == null) {
-                    tiles[i][j] = Tileset.NOTHING;
-                }
-            }
-        }
+    void setPlayer(int x, int y) {
+        playerPos = new Position(x, y);
     }
 
     /**
-     * @return Return a list of room instances
+     * @return the cells x + y * width() of the coins still on the map, in cell order
      */
-    private Room[] createRoomScheme(int roomNum) {
-        Room[] rooms = new Room[roomNum];
-
-        for (int i = 0; i < roomNum; i++) {
-            int randX = RandomUtils.uniform(random, 1, WIDTH - 11);
-            int randY = RandomUtils.uniform(random, 1, HEIGHT - 11);
-            int randWidth = RandomUtils.uniform(random, 2, 10);
-            int randHeight = RandomUtils.uniform(random, 2, 10);
-
-            rooms[i] = new Room(randWidth, randHeight, randX, randY);
+    int[] coinCells() {
+        int[] cells = new int[coins.size()];
+        int i = 0;
+        for (int cell = coins.next(0); cell >= 0; cell = coins.next(cell + 1)) {
+            cells[i++] = cell;
         }
+        return cells;
+    }
 
-        return rooms;
+    void setCoinCells(int[] cells) {
+        for (int cell : cells) {
+            if (cell < 0 || cell >= WIDTH * HEIGHT) {
+                throw new IllegalArgumentException("coin outside the map: " + cell);
+            }
+        }
+        coins.clear();
+        coins.addAll(cells, cells.length);
     }
 
+    GameRandom.Kind randomKind() {
+        return random.kind();
+    }
 
     /**
-     * Update the tiles by adding rooms in Room[]
+     * @return the generator state, restorable with setRandomState
      */
-    private void drawRooms(Room[] rooms, TETile[][] tiles) {
-        for (Room room : rooms) {
-            for (int x = room.X; x < room.width + room.X; x++) {
-                for (int y = room.Y; y < room.height + room.Y; y++) {
-                    tiles[x][y] = _default;
-                }
-            }
-        }
+    long[] randomState() {
+        return random.state();
     }
 
-    public void setRandom(long seed) {
-        this.random = new Random(seed);
+    void setRandomState(GameRandom.Kind kind, long[] state) {
+        GameRandom restored = GameRandom.create(kind, 0);
+        restored.setState(state);
+        random = restored;
     }
 
     public void control(char step) {
         int x = playerPos.X;
         int y = playerPos.Y;
         if (step == 'w' || step == 'W' || step == 'k') {
-            if (y < HEIGHT - 1 && !floorTiles[x][y + 1].description().equals("wall")) {
+            if (y < HEIGHT - 1 && tileAt(x, y + 1) != TileRegistry.WALL) {
                 playerPos.Y++;
             }
         }
 
         if (step == 'a' || step == 'A' || step == 'h') {
-            if (x > 0 && !floorTiles[x - 1][y].description().equals("wall")) {
+            if (x > 0 && tileAt(x - 1, y) != TileRegistry.WALL) {
                 playerPos.X--;
             }
         }
 
         if (step == 's' || step == 'S' || step == 'j') {
-            if (y > 0 && !floorTiles[x][y - 1].description().equals("wall")) {
+            if (y > 0 && tileAt(x, y - 1) != TileRegistry.WALL) {
                 playerPos.Y--;
             }
         }
 
         if (step == 'd' || step == 'D' || step == 'l') {
-            if (x < WIDTH - 1 && !floorTiles[x + 1][y].description().equals("wall")) {
+            if (x < WIDTH - 1 && tileAt(x + 1, y) != TileRegistry.WALL) {
                 playerPos.X++;
             }
         }
 
-        for (int i = 0; i < coinsPosition.size(); i++) {
-            if (coinsPosition.get(i).equals(playerPos)) {
-                coinsPosition.remove(i);
+        coins.remove(index(playerPos.X, playerPos.Y));
+    }
+
+    /**
+     * Moves the player count steps in the direction of step, exactly as count calls of
+     * control(step) would. Runs of up to DIRECT_RUN steps are walked tile by tile unless the
+     * slide table is already built; longer ones build it and take constant time.
+     */
+    public void move(char step, int count) {
+        if (count <= 0) {
+            return;
+        }
+        boolean walk = slides == null && (count <= DIRECT_RUN || floorTiles.offHeap());
+        if (!walk && slides == null) {
+            slides = new SlideTable(floorTiles);
+        }
+        int x = playerPos.X;
+        int y = playerPos.Y;
+        int steps = 0;
+        if (step == 'w' || step == 'W' || step == 'k') {
+            steps = walk ? freeSteps(x, y, 0, 1, count) : Math.min(count, slides.up(x, y));
+            playerPos.Y = y + steps;
+            coins.removeInColumn(x, y + 1, y + steps);
+        } else if (step == 'a' || step == 'A' || step == 'h') {
+            steps = walk ? freeSteps(x, y, -1, 0, count) : Math.min(count, slides.left(x, y));
+            playerPos.X = x - steps;
+            coins.removeInRow(y, x - steps, x - 1);
+        } else if (step == 's' || step == 'S' || step == 'j') {
+            steps = walk ? freeSteps(x, y, 0, -1, count) : Math.min(count, slides.down(x, y));
+            playerPos.Y = y - steps;
+            coins.removeInColumn(x, y - steps, y - 1);
+        } else if (step == 'd' || step == 'D' || step == 'l') {
+            steps = walk ? freeSteps(x, y, 1, 0, count) : Math.min(count, slides.right(x, y));
+            playerPos.X = x + steps;
+            coins.removeInRow(y, x + 1, x + steps);
+        }
+        if (steps < count) {
+            // control also picks up a coin under a player who didn't move
+            coins.remove(index(playerPos.X, playerPos.Y));
+        }
+    }
+
+    /* Steps, up to count, that can be taken from (x, y) by (dx, dy) before a wall or the edge. */
+    private int freeSteps(int x, int y, int dx, int dy, int count) {
+        int steps = 0;
+        while (steps < count) {
+            int nx = x + dx * (steps + 1);
+            int ny = y + dy * (steps + 1);
+            if (nx < 0 || ny < 0 || nx >= WIDTH || ny >= HEIGHT
+                    || tileAt(nx, ny) == TileRegistry.WALL) {
+                break;
             }
+            steps++;
         }
+        return steps;
     }
 
+    /**
+     * Slides the player in the direction of step until the next step would hit a wall, picking
+     * up every coin passed on the way.
+     */
     public void ninjaControl(char step) {
+        // A world off the heap gets no slide table, which takes 16 bytes per tile
+        boolean walk = floorTiles.offHeap();
+        if (!walk && slides == null) {
+            slides = new SlideTable(floorTiles);
+        }
         int x = playerPos.X;
         int y = playerPos.Y;
+        // Coins are collected on the cells moved into, like control does
         if (step == 'w' || step == 'W' || step == 'k') {
-            while (y < HEIGHT - 1 && !floorTiles[x][y + 1].description().equals("wall")) {
-                y++;
-                playerPos.Y++;
+            int steps = walk ? freeSteps(x, y, 0, 1, Integer.MAX_VALUE) : slides.up(x, y);
+            if (steps > 0) {
+                playerPos.Y = y + steps;
+                coins.removeInColumn(x, y + 1, y + steps);
             }
         }
 
         if (step == 'a' || step == 'A' || step == 'h') {
-            while (x > 0 && !floorTiles[x - 1][y].description().equals("wall")) {
-                x--;
-                playerPos.X--;
+            int steps = walk ? freeSteps(x, y, -1, 0, Integer.MAX_VALUE) : slides.left(x, y);
+            if (steps > 0) {
+                playerPos.X = x - steps;
+                coins.removeInRow(y, x - steps, x - 1);
             }
         }
 
         if (step == 's' || step == 'S' || step == 'j') {
-            while (y > 0 && !floorTiles[x][y - 1].description().equals("wall")) {
-                y--;
-                playerPos.Y--;
+            int steps = walk ? freeSteps(x, y, 0, -1, Integer.MAX_VALUE) : slides.down(x, y);
+            if (steps > 0) {
+                playerPos.Y = y - steps;
+                coins.removeInColumn(x, y - steps, y - 1);
             }
         }
 
         if (step == 'd' || step == 'D' || step == 'l') {
-            while (x < WIDTH - 1 && !floorTiles[x + 1][y].description().equals("wall")) {
-                x++;
-                playerPos.X++;
+            int steps = walk ? freeSteps(x, y, 1, 0, Integer.MAX_VALUE) : slides.right(x, y);
+            if (steps > 0) {
+                playerPos.X = x + steps;
+                coins.removeInRow(y, x + 1, x + steps);
             }
         }
     }
 
-    public TETile[][] getFloorTiles() {
+    /**
+     * Materializes the world, without player and coins, as a TETile[][].
+     */
+    private TETile[][] toTiles() {
         TETile[][] output = new TETile[WIDTH][HEIGHT];
-
-        // Copy
         for (int x = 0; x < WIDTH; x++) {
             for (int y = 0; y < HEIGHT; y++) {
-                output[x][y] = floorTiles[x][y];
+                output[x][y] = TileRegistry.tile(tileAt(x, y));
             }
         }
+        return output;
+    }
+
+    /**
+     * @return a new array holding the world with the player and coins, same as view().snapshot()
+     */
+    public TETile[][] getFloorTiles() {
+        return view().snapshot();
+    }
 
-        for (Position pos : coinsPosition) {
-            int x = pos.X;
-            int y = pos.Y;
-            output[x][y] = Tileset.COIN;
+    /**
+     * @return a read-only view of the world with the player and coins, which follows the map as
+     *         it changes. The same view is returned every time.
+     */
+    public WorldView view() {
+        if (view == null) {
+            view = new View();
         }
+        return view;
+    }
 
+    /* Reads the player and coins over the tile store as each cell is asked for. */
+    private class View implements WorldView {
+        @Override
+        public int width() {
+            return WIDTH;
+        }
 
-        int x = playerPos.X;
-        int y = playerPos.Y;
-        output[x][y] = Tileset.PLAYER;
-        return output;
+        @Override
+        public int height() {
+            return HEIGHT;
+        }
+
+        @Override
+        public TETile get(int x, int y) {
+            if (x == playerPos.X && y == playerPos.Y) {
+                return Tileset.PLAYER;
+            }
+            if (coins.contains(index(x, y))) {
+                return Tileset.COIN;
+            }
+            return TileRegistry.tile(tileAt(x, y));
+        }
+
+        @Override
+        public TETile[][] snapshot() {
+            TETile[][] output = toTiles();
+            for (int cell = coins.next(0); cell >= 0; cell = coins.next(cell + 1)) {
+                output[cell % WIDTH][cell / WIDTH] = Tileset.COIN;
+            }
+            output[playerPos.X][playerPos.Y] = Tileset.PLAYER;
+            return output;
+        }
     }
 }
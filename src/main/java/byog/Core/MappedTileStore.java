@@ -0,0 +1,165 @@
+package byog.Core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * TileStore kept in a memory-mapped file, so worlds can be larger than the heap and reopening
+ * one doesn't read it. The world is cut into CHUNK x CHUNK tile chunks, each stored as one
+ * contiguous 4 KiB block, so a room or corridor touches a handful of pages instead of one page
+ * per row. The file is created sparse: chunks never written take no disk space and are never
+ * paged in.
+ *
+ * A world holds at most Integer.MAX_VALUE tiles, the most a Map can number with int cells.
+ *
+ * Layout: a HEADER_SIZE byte header (magic "PMWS", version, width, height, chunk size), then
+ * the chunks row by row, each holding its tiles row by row.
+ *
+ * The mapping stays valid until the store is garbage collected; close() only flushes.
+ */
+public class MappedTileStore implements TileStore, Closeable {
+    public static final int CHUNK = 64;
+    private static final int CHUNK_SHIFT = 6;
+    private static final int CHUNK_MASK = CHUNK - 1;
+    private static final int CHUNK_BYTES = CHUNK * CHUNK;
+    private static final int HEADER_SIZE = 4096;
+    private static final int MAGIC = 0x504D5753;      // "PMWS"
+    private static final short VERSION = 1;
+    /* Bytes per mapped segment; a single MappedByteBuffer can't exceed 2 GiB. */
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    private final int width;
+    private final int height;
+    private final int chunksX;
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+
+    private MappedTileStore(FileChannel channel, int width, int height) throws IOException {
+        this.width = width;
+        this.height = height;
+        this.chunksX = (width + CHUNK_MASK) >>> CHUNK_SHIFT;
+        this.channel = channel;
+
+        long chunksY = (height + CHUNK_MASK) >>> CHUNK_SHIFT;
+        long dataSize = chunksX * chunksY * CHUNK_BYTES;
+        int count = (int) ((dataSize + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+        segments = new MappedByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long start = (long) i << SEGMENT_SHIFT;
+            long size = Math.min(1L << SEGMENT_SHIFT, dataSize - start);
+            segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + start, size);
+        }
+    }
+
+    /**
+     * Creates a store for an empty world of the given size at path, replacing any file there.
+     */
+    public static MappedTileStore create(Path path, int width, int height) throws IOException {
+        if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("bad world size: " + width + "x" + height);
+        }
+        FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.SPARSE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(4 + 2 + 4 + 4 + 4);
+            header.putInt(MAGIC).putShort(VERSION).putInt(width).putInt(height).putInt(CHUNK);
+            header.flip();
+            while (header.hasRemaining()) {
+                ch.write(header, header.position());
+            }
+            return new MappedTileStore(ch, width, height);
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a store written earlier with create.
+     */
+    public static MappedTileStore open(Path path) throws IOException {
+        FileChannel ch = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(4 + 2 + 4 + 4 + 4);
+            while (header.hasRemaining()) {
+                if (ch.read(header, header.position()) < 0) {
+                    throw new IOException("world store truncated: " + path);
+                }
+            }
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("not a world store: " + path);
+            }
+            short version = header.getShort();
+            if (version != VERSION) {
+                throw new IOException("unsupported world store version " + version);
+            }
+            int width = header.getInt();
+            int height = header.getInt();
+            int chunk = header.getInt();
+            if (chunk != CHUNK || width <= 0 || height <= 0
+                    || (long) width * height > Integer.MAX_VALUE) {
+                throw new IOException("world store corrupt: " + width + "x" + height
+                        + " in chunks of " + chunk);
+            }
+            return new MappedTileStore(ch, width, height);
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    private long offset(int x, int y) {
+        long chunk = (long) (y >>> CHUNK_SHIFT) * chunksX + (x >>> CHUNK_SHIFT);
+        return chunk * CHUNK_BYTES + (((y & CHUNK_MASK) << CHUNK_SHIFT) | (x & CHUNK_MASK));
+    }
+
+    @Override
+    public int width() {
+        return width;
+    }
+
+    @Override
+    public int height() {
+        return height;
+    }
+
+    @Override
+    public boolean offHeap() {
+        return true;
+    }
+
+    @Override
+    public byte get(int x, int y) {
+        long off = offset(x, y);
+        return segments[(int) (off >>> SEGMENT_SHIFT)].get((int) (off & SEGMENT_MASK));
+    }
+
+    @Override
+    public void set(int x, int y, byte id) {
+        long off = offset(x, y);
+        segments[(int) (off >>> SEGMENT_SHIFT)].put((int) (off & SEGMENT_MASK), id);
+    }
+
+    /**
+     * Writes changed pages back to the file.
+     */
+    public void flush() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+}
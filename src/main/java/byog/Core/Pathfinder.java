@@ -0,0 +1,312 @@
+package byog.Core;
+
+import byog.TileEngine.TileRegistry;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+/**
+ * Navigation over a Map for computer-controlled movers. A cell is walkable when it is not a
+ * wall, the same rule Map.control moves the player by, and moves go one cell up, down, left or
+ * right. Cells are numbered x + y * width.
+ *
+ * distanceField(x, y) gives the distance from every cell to a target, from one breadth-first
+ * search. Fields are cached per target with least-recently-used eviction, so any number of
+ * movers chasing the same target in a tick share a single search. findPath runs A* for one-off
+ * routes. Anything cached is dropped as soon as a tile of the map changes.
+ *
+ * Not thread-safe; the returned DistanceFields are immutable and can be shared freely.
+ */
+public class Pathfinder {
+    public static final int UNREACHABLE = -1;
+    private static final int DEFAULT_CACHE_SIZE = 16;
+
+    private final Map map;
+    private final TileStore tiles;
+    private final int width;
+    private final int height;
+    private final LinkedHashMap<Integer, DistanceField> cache;
+    private int cachedVersion;
+    private long searches;
+    private long cacheHits;
+
+    /* A* buffers, reused between searches. stamp[c] == search marks g[c] and parent[c] valid. */
+    private int[] g = new int[0];
+    private int[] parent;
+    private int[] stamp;
+    private int search;
+    private int[] heapCells = new int[64];
+    private int[] heapKeys = new int[64];
+    private int heapSize;
+
+    public Pathfinder(Map map) {
+        this(map, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param cacheSize number of distance fields kept; each takes 4 bytes per cell
+     */
+    public Pathfinder(Map map, int cacheSize) {
+        if (cacheSize < 1) {
+            throw new IllegalArgumentException("cache size must be positive: " + cacheSize);
+        }
+        this.map = map;
+        this.tiles = map.tileStore();
+        this.width = map.width();
+        this.height = map.height();
+        this.cache = new LinkedHashMap<Integer, DistanceField>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    java.util.Map.Entry<Integer, DistanceField> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        this.cachedVersion = map.tileVersion();
+    }
+
+    /**
+     * Distances from every cell to one target cell, in moves. Immutable.
+     */
+    public static class DistanceField {
+        private final int width;
+        private final int height;
+        private final int[] distance;
+
+        DistanceField(int width, int height, int[] distance) {
+            this.width = width;
+            this.height = height;
+            this.distance = distance;
+        }
+
+        /**
+         * @return moves needed from x, y to reach the target, or UNREACHABLE
+         */
+        public int distance(int x, int y) {
+            return distance[x + y * width];
+        }
+
+        /**
+         * @return the key ('w', 'a', 's' or 'd') of a move from x, y that gets one step closer
+         *         to the target, or 0 at the target or where it can't be reached
+         */
+        public char nextStep(int x, int y) {
+            int d = distance[x + y * width];
+            if (d <= 0) {
+                return 0;
+            }
+            if (y < height - 1 && distance[x + (y + 1) * width] == d - 1) {
+                return 'w';
+            }
+            if (x > 0 && distance[x - 1 + y * width] == d - 1) {
+                return 'a';
+            }
+            if (y > 0 && distance[x + (y - 1) * width] == d - 1) {
+                return 's';
+            }
+            return 'd';
+        }
+    }
+
+    private boolean walkable(int x, int y) {
+        return tiles.get(x, y) != TileRegistry.WALL;
+    }
+
+    private void checkCache() {
+        int version = map.tileVersion();
+        if (version != cachedVersion) {
+            cache.clear();
+            cachedVersion = version;
+        }
+    }
+
+    /**
+     * @return distances from every cell to x, y, computed or taken from the cache
+     */
+    public DistanceField distanceField(int x, int y) {
+        checkCache();
+        int target = x + y * width;
+        DistanceField field = cache.get(target);
+        if (field != null) {
+            cacheHits++;
+            return field;
+        }
+        field = new DistanceField(width, height, breadthFirst(x, y));
+        cache.put(target, field);
+        return field;
+    }
+
+    private int[] breadthFirst(int tx, int ty) {
+        searches++;
+        int[] distance = new int[width * height];
+        Arrays.fill(distance, UNREACHABLE);
+        if (!walkable(tx, ty)) {
+            return distance;
+        }
+        // Every cell enters the queue once, so it can share the distance array's size
+        int[] queue = new int[width * height];
+        int head = 0;
+        int tail = 0;
+        int start = tx + ty * width;
+        distance[start] = 0;
+        queue[tail++] = start;
+        while (head < tail) {
+            int cell = queue[head++];
+            int x = cell % width;
+            int y = cell / width;
+            int next = distance[cell] + 1;
+            if (y < height - 1 && distance[cell + width] == UNREACHABLE && walkable(x, y + 1)) {
+                distance[cell + width] = next;
+                queue[tail++] = cell + width;
+            }
+            if (x > 0 && distance[cell - 1] == UNREACHABLE && walkable(x - 1, y)) {
+                distance[cell - 1] = next;
+                queue[tail++] = cell - 1;
+            }
+            if (y > 0 && distance[cell - width] == UNREACHABLE && walkable(x, y - 1)) {
+                distance[cell - width] = next;
+                queue[tail++] = cell - width;
+            }
+            if (x < width - 1 && distance[cell + 1] == UNREACHABLE && walkable(x + 1, y)) {
+                distance[cell + 1] = next;
+                queue[tail++] = cell + 1;
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * Finds a shortest route with A*, guided by the Manhattan distance to the goal.
+     * @return the cells of the route from x0, y0 to x1, y1, both included, or null if there is
+     *         none
+     */
+    public int[] findPath(int x0, int y0, int x1, int y1) {
+        if (!walkable(x0, y0) || !walkable(x1, y1)) {
+            return null;
+        }
+        searches++;
+        int size = width * height;
+        if (g.length < size) {
+            g = new int[size];
+            parent = new int[size];
+            stamp = new int[size];
+            search = 0;
+        }
+        if (++search == 0) {
+            Arrays.fill(stamp, 0);
+            search = 1;
+        }
+
+        int start = x0 + y0 * width;
+        int goal = x1 + y1 * width;
+        heapSize = 0;
+        g[start] = 0;
+        parent[start] = -1;
+        stamp[start] = search;
+        push(start, heuristic(x0, y0, x1, y1));
+
+        while (heapSize > 0) {
+            int key = heapKeys[0];
+            int cell = pop();
+            int x = cell % width;
+            int y = cell / width;
+            if (key > g[cell] + heuristic(x, y, x1, y1)) {
+                continue;       // stale entry, the cell was reached more cheaply since
+            }
+            if (cell == goal) {
+                return route(goal);
+            }
+            int next = g[cell] + 1;
+            if (y < height - 1) {
+                relax(cell, cell + width, x, y + 1, next, x1, y1);
+            }
+            if (x > 0) {
+                relax(cell, cell - 1, x - 1, y, next, x1, y1);
+            }
+            if (y > 0) {
+                relax(cell, cell - width, x, y - 1, next, x1, y1);
+            }
+            if (x < width - 1) {
+                relax(cell, cell + 1, x + 1, y, next, x1, y1);
+            }
+        }
+        return null;
+    }
+
+    private void relax(int from, int cell, int x, int y, int cost, int x1, int y1) {
+        if (!walkable(x, y) || (stamp[cell] == search && g[cell] <= cost)) {
+            return;
+        }
+        stamp[cell] = search;
+        g[cell] = cost;
+        parent[cell] = from;
+        push(cell, cost + heuristic(x, y, x1, y1));
+    }
+
+    private static int heuristic(int x, int y, int x1, int y1) {
+        return Math.abs(x - x1) + Math.abs(y - y1);
+    }
+
+    private int[] route(int goal) {
+        int[] path = new int[g[goal] + 1];
+        for (int cell = goal, i = path.length - 1; cell >= 0; cell = parent[cell], i--) {
+            path[i] = cell;
+        }
+        return path;
+    }
+
+    /* Binary min-heap of cells ordered by key, in two parallel arrays. */
+
+    private void push(int cell, int key) {
+        if (heapSize == heapCells.length) {
+            heapCells = Arrays.copyOf(heapCells, heapSize * 2);
+            heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+        }
+        int i = heapSize++;
+        while (i > 0) {
+            int up = (i - 1) >>> 1;
+            if (heapKeys[up] <= key) {
+                break;
+            }
+            heapCells[i] = heapCells[up];
+            heapKeys[i] = heapKeys[up];
+            i = up;
+        }
+        heapCells[i] = cell;
+        heapKeys[i] = key;
+    }
+
+    private int pop() {
+        int top = heapCells[0];
+        int cell = heapCells[--heapSize];
+        int key = heapKeys[heapSize];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) {
+                child++;
+            }
+            if (heapKeys[child] >= key) {
+                break;
+            }
+            heapCells[i] = heapCells[child];
+            heapKeys[i] = heapKeys[child];
+            i = child;
+        }
+        heapCells[i] = cell;
+        heapKeys[i] = key;
+        return top;
+    }
+
+    /** @return number of searches run, breadth-first and A* */
+    public long searches() {
+        return searches;
+    }
+
+    /** @return number of distanceField calls answered from the cache */
+    public long cacheHits() {
+        return cacheHits;
+    }
+}
@@ -0,0 +1,182 @@
+package byog.Core;
+
+import byog.TileEngine.TileRegistry;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Draws walls, grass and the door of a map whose rooms and corridors are dug, and lists the
+ * cells coins may go to, in two row by row passes. It replaces four full scans Map used to run
+ * one after the other, and gives the same result, random numbers included:
+ *
+ *  - walls on every empty cell next to a floor, diagonals included;
+ *  - grass on every floor whose gaussian, drawn column by column, exceeds 0.8;
+ *  - the door on the first wall, column by column from a third to two thirds of the width and
+ *    bottom up in the lower half, with an open cell above and nothing below;
+ *  - coins on floor and grass cells, listed column by column.
+ *
+ * It works as follows:
+ *
+ *  1. the tiles are read once into bit masks, one bit per cell, 64 cells to a long;
+ *  2. one gaussian is drawn per floor, in the column by column order the grass rule draws them;
+ *  3. walls are the empty cells of the floor mask dilated by one cell in every direction,
+ *     computed 64 cells at a time, and are written row by row together with grass, door
+ *     candidates and coin candidates.
+ *
+ * Walls, grass and the door are written to the store; the caller places the player and coins.
+ */
+class PostProcessor {
+    private final TileStore tiles;
+    private final int width;
+    private final int height;
+    /* Longs per row of a mask. */
+    private final int words;
+    private int doorX = -1;
+    private int doorY = -1;
+    private int[] candidates;
+
+    PostProcessor(TileStore tiles) {
+        this.tiles = tiles;
+        this.width = tiles.width();
+        this.height = tiles.height();
+        this.words = (width + 63) >>> 6;
+    }
+
+    void run(Random random) {
+        long[] floor = new long[words * height];
+        long[] open = new long[words * height];     // floor or grass
+        long[] empty = new long[words * height];
+        long[] wall = new long[words * height];
+        int[] floorsIn = new int[width];
+        int[] openIn = new int[width];
+        for (int y = 0; y < height; y++) {
+            int row = y * words;
+            for (int x = 0; x < width; x++) {
+                byte id = tiles.get(x, y);
+                long bit = 1L << x;
+                if (id == TileRegistry.FLOOR) {
+                    floor[row + (x >>> 6)] |= bit;
+                    floorsIn[x]++;
+                }
+                if (id == TileRegistry.FLOOR || id == TileRegistry.GRASS) {
+                    open[row + (x >>> 6)] |= bit;
+                    openIn[x]++;
+                } else if (id == TileRegistry.NOTHING) {
+                    empty[row + (x >>> 6)] |= bit;
+                } else if (id == TileRegistry.WALL) {
+                    wall[row + (x >>> 6)] |= bit;
+                }
+            }
+        }
+
+        // Column by column numbering of floors and of open cells: column x starts at start[x]
+        int[] floorStart = startsOf(floorsIn);
+        int[] openStart = startsOf(openIn);
+        int floors = floorStart[width - 1] + floorsIn[width - 1];
+        boolean[] grass = new boolean[floors];
+        for (int i = 0; i < floors; i++) {
+            grass[i] = RandomUtils.gaussian(random) > 0.8;
+        }
+
+        candidates = new int[openStart[width - 1] + openIn[width - 1]];
+        int[] doorRow = new int[width];
+        Arrays.fill(doorRow, -1);
+        long[] newWalls = new long[words];
+        long[] belowNewWalls = new long[words];
+        long[] dilated = new long[words];
+        for (int y = 0; y < height; y++) {
+            int row = y * words;
+            dilate(floor, y, dilated);
+            for (int w = 0; w < words; w++) {
+                long walls = dilated[w] & empty[row + w];
+                newWalls[w] = walls;
+                for (long bits = walls; bits != 0; bits &= bits - 1) {
+                    tiles.set((w << 6) + Long.numberOfTrailingZeros(bits), y, TileRegistry.WALL);
+                }
+                for (long bits = floor[row + w]; bits != 0; bits &= bits - 1) {
+                    int x = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    if (grass[floorStart[x]++]) {
+                        tiles.set(x, y, TileRegistry.GRASS);
+                    }
+                }
+                for (long bits = open[row + w]; bits != 0; bits &= bits - 1) {
+                    int x = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    candidates[openStart[x]++] = x + y * width;
+                }
+
+                if (y < height / 2) {
+                    // A wall with an open cell above and nothing below
+                    long doors = (wall[row + w] | walls) & open[row + words + w];
+                    if (y > 0) {
+                        doors &= empty[row - words + w] & ~belowNewWalls[w];
+                    }
+                    for (long bits = doors; bits != 0; bits &= bits - 1) {
+                        int x = (w << 6) + Long.numberOfTrailingZeros(bits);
+                        if (doorRow[x] < 0) {
+                            doorRow[x] = y;
+                        }
+                    }
+                }
+            }
+            long[] swap = belowNewWalls;
+            belowNewWalls = newWalls;
+            newWalls = swap;
+        }
+
+        for (int x = width / 3; x < width * 2 / 3; x++) {
+            if (doorRow[x] >= 0) {
+                doorX = x;
+                doorY = doorRow[x];
+                tiles.set(doorX, doorY, TileRegistry.LOCKED_DOOR);
+                return;
+            }
+        }
+    }
+
+    private int[] startsOf(int[] counts) {
+        int[] starts = new int[width];
+        for (int x = 1; x < width; x++) {
+            starts[x] = starts[x - 1] + counts[x - 1];
+        }
+        return starts;
+    }
+
+    /* Row y of mask with every bit spread to its 8 neighbours, into out. */
+    private void dilate(long[] mask, int y, long[] out) {
+        for (int w = 0; w < words; w++) {
+            long v = mask[y * words + w];
+            if (y > 0) {
+                v |= mask[(y - 1) * words + w];
+            }
+            if (y < height - 1) {
+                v |= mask[(y + 1) * words + w];
+            }
+            out[w] = v;
+        }
+        long carry = 0;
+        for (int w = 0; w < words; w++) {
+            long v = out[w];
+            long next = w + 1 < words ? out[w + 1] : 0;
+            // Bits beyond the last column are never set, so nothing spreads in from there
+            out[w] = v | v << 1 | carry >>> 63 | v >>> 1 | next << 63;
+            carry = v;
+        }
+    }
+
+    /** @return the door's column, or -1 if no cell qualified */
+    int doorX() {
+        return doorX;
+    }
+
+    int doorY() {
+        return doorY;
+    }
+
+    /**
+     * @return the floor and grass cells x + y * width, column by column
+     */
+    int[] coinCandidates() {
+        return candidates;
+    }
+}
@@ -0,0 +1,130 @@
+package byog.Core;
+
+import byog.TileEngine.TileRegistry;
+
+import java.util.Arrays;
+
+/**
+ * Labels the 4-connected regions of non-empty tiles in a TileStore. Regions are
+ * numbered 1, 2, 3 ... in the order their first cell is met when scanning column by column,
+ * and the cells of every region can be read back in that same order.
+ *
+ * Labeling is an iterative breadth-first fill over a primitive queue, so it needs no call
+ * stack and runs in time linear in the number of cells. The buffers are kept between calls.
+ */
+class RegionLabeler {
+    private int[] labels = new int[0];
+    private int[] queue = new int[0];
+    private int[] cells = new int[0];
+    private int[] starts = new int[0];
+    private int regionNum;
+
+    /**
+     * Labels every non-empty tile. Cells are numbered x + y * width.
+     * @return the number of regions found
+     */
+    int label(TileStore tiles) {
+        int width = tiles.width();
+        int height = tiles.height();
+        int size = width * height;
+        if (labels.length < size) {
+            labels = new int[size];
+            queue = new int[size];
+            cells = new int[size];
+        }
+        Arrays.fill(labels, 0, size, 0);
+
+        regionNum = 0;
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                int i = x + y * width;
+                if (labels[i] == 0 && tiles.get(x, y) != TileRegistry.NOTHING) {
+                    regionNum++;
+                    fill(tiles, width, height, i, regionNum);
+                }
+            }
+        }
+
+        collectCells(width, height);
+        return regionNum;
+    }
+
+    private void fill(TileStore tiles, int width, int height, int start, int region) {
+        int head = 0;
+        int tail = 0;
+        labels[start] = region;
+        queue[tail++] = start;
+
+        while (head < tail) {
+            int i = queue[head++];
+            int x = i % width;
+            int y = i / width;
+            if (x > 0) {
+                tail = visit(tiles, x - 1, y, i - 1, region, tail);
+            }
+            if (x < width - 1) {
+                tail = visit(tiles, x + 1, y, i + 1, region, tail);
+            }
+            if (y > 0) {
+                tail = visit(tiles, x, y - 1, i - width, region, tail);
+            }
+            if (y < height - 1) {
+                tail = visit(tiles, x, y + 1, i + width, region, tail);
+            }
+        }
+    }
+
+    private int visit(TileStore tiles, int x, int y, int i, int region, int tail) {
+        if (labels[i] == 0 && tiles.get(x, y) != TileRegistry.NOTHING) {
+            labels[i] = region;
+            queue[tail++] = i;
+        }
+        return tail;
+    }
+
+    /* Buckets the labeled cells by region, keeping column-by-column order inside each region. */
+    private void collectCells(int width, int height) {
+        if (starts.length < regionNum + 2) {
+            starts = new int[regionNum + 2];
+        }
+        Arrays.fill(starts, 0, regionNum + 2, 0);
+
+        int size = width * height;
+        for (int i = 0; i < size; i++) {
+            starts[labels[i] + 1]++;
+        }
+        // starts[r] becomes the first slot of region r; region 0 (nothing) is bucketed too
+        for (int r = 1; r <= regionNum + 1; r++) {
+            starts[r] += starts[r - 1];
+        }
+        int[] next = queue;
+        System.arraycopy(starts, 0, next, 0, regionNum + 1);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                int i = x + y * width;
+                cells[next[labels[i]]++] = i;
+            }
+        }
+    }
+
+    /**
+     * @return the region of cell x + y * width, 0 for empty cells
+     */
+    int regionOf(int cell) {
+        return labels[cell];
+    }
+
+    /**
+     * @return number of cells in region
+     */
+    int regionSize(int region) {
+        return starts[region + 1] - starts[region];
+    }
+
+    /**
+     * @return the k-th cell of region in column-by-column order
+     */
+    int regionCell(int region, int k) {
+        return cells[starts[region] + k];
+    }
+}
@@ -0,0 +1,155 @@
+package byog.Core;
+
+import java.util.Arrays;
+
+/**
+ * Keeps track of the rooms placed on a map and of which of them are connected, without looking
+ * at any tile. Two rooms are connected when they overlap or share an edge, i.e. when their
+ * cells form one 4-connected region, and connectivity is kept in a union-find as rooms are
+ * added. Rooms are found through a uniform grid of CELL x CELL buckets, so adding a room costs
+ * time in the number of rooms near it, not in the size of the world.
+ */
+class RoomPlacer {
+    private static final int CELL = 16;
+
+    private final int gridWidth;
+    private final int gridHeight;
+    /* Room indices in every bucket, bucketSizes[b] of them in buckets[b]. */
+    private final int[][] buckets;
+    private final int[] bucketSizes;
+
+    private Map.Room[] rooms = new Map.Room[16];
+    private int[] parent = new int[16];
+    private int size;
+    /* For every room, the room being added when it was last looked at, to skip duplicates. */
+    private int[] seen = new int[16];
+
+    RoomPlacer(int width, int height) {
+        this.gridWidth = (width + CELL - 1) / CELL;
+        this.gridHeight = (height + CELL - 1) / CELL;
+        this.buckets = new int[gridWidth * gridHeight][];
+        this.bucketSizes = new int[buckets.length];
+    }
+
+    /**
+     * Adds room and connects it to every room it overlaps or touches.
+     * @return the index of the room, counting from 0 in the order rooms were added
+     */
+    int add(Map.Room room) {
+        int id = size++;
+        if (id == rooms.length) {
+            rooms = Arrays.copyOf(rooms, id * 2);
+            parent = Arrays.copyOf(parent, id * 2);
+            seen = Arrays.copyOf(seen, id * 2);
+        }
+        rooms[id] = room;
+        parent[id] = id;
+        seen[id] = -1;
+
+        // Neighbours can lie one tile outside the room
+        int gx0 = bucket(room.X - 1, gridWidth);
+        int gx1 = bucket(room.X + room.width, gridWidth);
+        int gy0 = bucket(room.Y - 1, gridHeight);
+        int gy1 = bucket(room.Y + room.height, gridHeight);
+        for (int gy = gy0; gy <= gy1; gy++) {
+            for (int gx = gx0; gx <= gx1; gx++) {
+                int b = gx + gy * gridWidth;
+                for (int i = 0; i < bucketSizes[b]; i++) {
+                    int other = buckets[b][i];
+                    if (seen[other] != id) {
+                        seen[other] = id;
+                        if (touch(room, rooms[other])) {
+                            union(id, other);
+                        }
+                    }
+                }
+            }
+        }
+
+        gx1 = bucket(room.X + room.width - 1, gridWidth);
+        gy1 = bucket(room.Y + room.height - 1, gridHeight);
+        for (int gy = bucket(room.Y, gridHeight); gy <= gy1; gy++) {
+            for (int gx = bucket(room.X, gridWidth); gx <= gx1; gx++) {
+                insert(gx + gy * gridWidth, id);
+            }
+        }
+        return id;
+    }
+
+    private static int bucket(int coordinate, int buckets) {
+        return Math.max(0, Math.min(buckets - 1, coordinate / CELL));
+    }
+
+    private void insert(int b, int id) {
+        if (buckets[b] == null) {
+            buckets[b] = new int[4];
+        } else if (bucketSizes[b] == buckets[b].length) {
+            buckets[b] = Arrays.copyOf(buckets[b], bucketSizes[b] * 2);
+        }
+        buckets[b][bucketSizes[b]++] = id;
+    }
+
+    /* True if a and b overlap, or share an edge of at least one tile. */
+    private static boolean touch(Map.Room a, Map.Room b) {
+        int gapX = Math.max(a.X, b.X) - Math.min(a.X + a.width, b.X + b.width);
+        int gapY = Math.max(a.Y, b.Y) - Math.min(a.Y + a.height, b.Y + b.height);
+        return gapX <= 0 && gapY < 0 || gapX < 0 && gapY <= 0;
+    }
+
+    private int find(int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /* Keeps the smaller index as root, so a component's root is its first room. */
+    private void union(int a, int b) {
+        int ra = find(a);
+        int rb = find(b);
+        if (ra < rb) {
+            parent[rb] = ra;
+        } else if (rb < ra) {
+            parent[ra] = rb;
+        }
+    }
+
+    /** @return number of rooms added */
+    int size() {
+        return size;
+    }
+
+    Map.Room room(int i) {
+        return rooms[i];
+    }
+
+    /** @return true if rooms i and j are connected, directly or through other rooms */
+    boolean connected(int i, int j) {
+        return find(i) == find(j);
+    }
+
+    /**
+     * @return the connected groups of rooms as arrays of room indices, groups ordered by their
+     *         first room and rooms in each group in the order they were added
+     */
+    int[][] components() {
+        int[] component = new int[size];
+        int[] counts = new int[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int root = find(i);
+            component[i] = root == i ? count++ : component[root];
+            counts[component[i]]++;
+        }
+        int[][] components = new int[count][];
+        for (int c = 0; c < count; c++) {
+            components[c] = new int[counts[c]];
+            counts[c] = 0;
+        }
+        for (int i = 0; i < size; i++) {
+            components[component[i]][counts[component[i]]++] = i;
+        }
+        return components;
+    }
+}
@@ -0,0 +1,368 @@
+package byog.Core;
+
+import byog.TileEngine.TileRegistry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact binary save files for Map. All numbers are big-endian:
+ *
+ *      int    magic "PMSV"
+ *      short  format version (2)
+ *      int    width, height
+ *      int    player x, player y
+ *      byte   random generator, the ordinal of its GameRandom.Kind
+ *      byte   n, followed by n longs of random state (GameRandom.state)
+ *      int    coin count, followed by one int x + y * width per coin
+ *      byte   tile encoding: RLE, PACKED or DEFLATE
+ *      ...    tile ids, row by row from (0, 0)
+ *      int    CRC32 of every byte before it
+ *
+ * RLE stores runs as a tile id byte and a varint run length. PACKED stores every id in
+ * bitsPerTile() bits. DEFLATE is the id grid compressed with java.util.zip and runs to the
+ * checksum. The writer picks whichever is smallest for the map at hand; scattered decoration
+ * breaks up runs, so small worlds usually end up as DEFLATE at a few hundred bytes.
+ *
+ * Version 1 files, which have a single long of Lcg48Random state in place of the generator and
+ * its state, are still read. Counts are checked against the bytes left before arrays are
+ * allocated for them, and worlds of more than MAX_TILES tiles can be neither written nor read.
+ *
+ * Files are written to a temporary file and moved into place, so a crash while saving leaves
+ * the previous save intact.
+ */
+public class SaveFormat {
+    private static final int MAGIC = 0x504D5356;      // "PMSV"
+    private static final short VERSION = 2;
+    private static final byte RLE = 0;
+    private static final byte PACKED = 1;
+    private static final byte DEFLATE = 2;
+
+    /* Most tiles a save may hold; a larger header is taken as corrupt rather than allocated. */
+    static final int MAX_TILES = 1 << 28;
+
+    /**
+     * Writes map to path, replacing any previous save.
+     */
+    public static void write(Map map, Path path) throws IOException {
+        ByteBuffer buf = encode(map);
+        // A temporary file of its own, so concurrent saves to one path never share one
+        Path tmp = Files.createTempFile(path.toAbsolutePath().getParent(),
+                path.getFileName() + ".", ".tmp");
+        try {
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                while (buf.hasRemaining()) {
+                    ch.write(buf);
+                }
+                ch.force(false);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+    }
+
+    /**
+     * Reads a map saved by write.
+     * @throws IOException if the file can't be read, is corrupt or has an unknown version
+     */
+    public static Map read(Path path) throws IOException {
+        ByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("save file too large: " + size + " bytes");
+            }
+            buf = ByteBuffer.allocate((int) size);
+            while (buf.hasRemaining()) {
+                if (ch.read(buf) < 0) {
+                    throw new IOException("save file truncated");
+                }
+            }
+        }
+        buf.flip();
+        return decode(buf);
+    }
+
+    static ByteBuffer encode(Map map) {
+        if ((long) map.width() * map.height() > MAX_TILES) {
+            throw new IllegalArgumentException("world too large to save: "
+                    + map.width() + "x" + map.height());
+        }
+        byte[] tiles = map.tileIds();
+        int[] coins = map.coinCells();
+        byte encoding = RLE;
+        byte[] body = encodeRle(tiles);
+        byte[] packed = encodePacked(tiles);
+        if (packed.length < body.length) {
+            encoding = PACKED;
+            body = packed;
+        }
+        byte[] deflated = encodeDeflate(tiles);
+        if (deflated != null && deflated.length < body.length) {
+            encoding = DEFLATE;
+            body = deflated;
+        }
+
+        long[] random = map.randomState();
+        ByteBuffer buf = ByteBuffer.allocate(2 + 4 * 6 + 2 + 8 * random.length + 4 * coins.length
+                + 1 + body.length + 4);
+        buf.putInt(MAGIC);
+        buf.putShort(VERSION);
+        buf.putInt(map.width());
+        buf.putInt(map.height());
+        buf.putInt(map.playerX());
+        buf.putInt(map.playerY());
+        buf.put((byte) map.randomKind().ordinal());
+        buf.put((byte) random.length);
+        for (long word : random) {
+            buf.putLong(word);
+        }
+        buf.putInt(coins.length);
+        for (int cell : coins) {
+            buf.putInt(cell);
+        }
+        buf.put(encoding);
+        buf.put(body);
+
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 0, buf.position());
+        buf.putInt((int) crc.getValue());
+        buf.flip();
+        return buf;
+    }
+
+    static Map decode(ByteBuffer buf) throws IOException {
+        if (buf.remaining() < 4 + 2 + 4) {
+            throw new IOException("save file truncated");
+        }
+        int end = buf.limit() - 4;
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), buf.arrayOffset() + buf.position(), end - buf.position());
+        if ((int) crc.getValue() != buf.getInt(end)) {
+            throw new IOException("save file corrupt: checksum mismatch");
+        }
+        buf.limit(end);
+
+        try {
+            if (buf.getInt() != MAGIC) {
+                throw new IOException("not a save file");
+            }
+            short version = buf.getShort();
+            if (version != 1 && version != VERSION) {
+                throw new IOException("unsupported save version " + version);
+            }
+            int width = buf.getInt();
+            int height = buf.getInt();
+            if (width <= 0 || height <= 0 || (long) width * height > MAX_TILES) {
+                throw new IOException("save file corrupt: world of " + width + "x" + height);
+            }
+            int playerX = buf.getInt();
+            int playerY = buf.getInt();
+            if (playerX < 0 || playerX >= width || playerY < 0 || playerY >= height) {
+                throw new IOException("save file corrupt: player outside the world at "
+                        + playerX + ", " + playerY);
+            }
+            Map map = new Map(width, height);
+            map.setPlayer(playerX, playerY);
+            if (version == 1) {
+                map.setRandomState(GameRandom.Kind.LCG48, new long[] {buf.getLong()});
+            } else {
+                GameRandom.Kind[] kinds = GameRandom.Kind.values();
+                int kind = buf.get();
+                if (kind < 0 || kind >= kinds.length) {
+                    throw new IOException("save file corrupt: unknown random generator " + kind);
+                }
+                int words = buf.get();
+                if (words < 0 || words * 8 > buf.remaining()) {
+                    throw new IOException("save file corrupt: " + words + " words of random state");
+                }
+                long[] random = new long[words];
+                for (int i = 0; i < random.length; i++) {
+                    random[i] = buf.getLong();
+                }
+                map.setRandomState(kinds[kind], random);
+            }
+            int coinCount = buf.getInt();
+            if (coinCount < 0 || coinCount > buf.remaining() / 4) {
+                throw new IOException("save file corrupt: " + coinCount + " coins");
+            }
+            int[] coins = new int[coinCount];
+            for (int i = 0; i < coins.length; i++) {
+                coins[i] = buf.getInt();
+            }
+            map.setCoinCells(coins);
+
+            byte[] tiles = new byte[width * height];
+            byte encoding = buf.get();
+            if (encoding == RLE) {
+                decodeRle(buf, tiles);
+            } else if (encoding == PACKED) {
+                decodePacked(buf, tiles);
+            } else if (encoding == DEFLATE) {
+                decodeDeflate(buf, tiles);
+            } else {
+                throw new IOException("unknown tile encoding " + encoding);
+            }
+            map.setTileIds(tiles);
+            return map;
+        } catch (RuntimeException e) {
+            // BufferUnderflowException, bad sizes or ids: the header lied about the contents
+            throw new IOException("save file corrupt: " + e, e);
+        }
+    }
+
+    private static byte[] encodeRle(byte[] tiles) {
+        // A run never takes more than 2 bytes per tile
+        ByteBuffer out = ByteBuffer.allocate(tiles.length * 2 + 1);
+        int i = 0;
+        while (i < tiles.length) {
+            byte id = tiles[i];
+            int run = 1;
+            while (i + run < tiles.length && tiles[i + run] == id) {
+                run++;
+            }
+            out.put(id);
+            putVarint(out, run);
+            i += run;
+        }
+        byte[] result = new byte[out.position()];
+        out.flip();
+        out.get(result);
+        return result;
+    }
+
+    private static void decodeRle(ByteBuffer in, byte[] tiles) throws IOException {
+        int i = 0;
+        while (i < tiles.length) {
+            byte id = checkedId(in.get());
+            int run = getVarint(in);
+            if (run <= 0 || run > tiles.length - i) {
+                throw new IOException("save file corrupt: bad run length " + run);
+            }
+            Arrays.fill(tiles, i, i + run, id);
+            i += run;
+        }
+    }
+
+    /** @return bits needed to store any registered tile id */
+    static int bitsPerTile() {
+        return 32 - Integer.numberOfLeadingZeros(TileRegistry.size() - 1);
+    }
+
+    private static byte[] encodePacked(byte[] tiles) {
+        int bits = bitsPerTile();
+        byte[] out = new byte[(int) (((long) tiles.length * bits + 7) / 8)];
+        long bitPos = 0;
+        for (byte id : tiles) {
+            for (int b = bits - 1; b >= 0; b--) {
+                if (((id >> b) & 1) != 0) {
+                    out[(int) (bitPos >>> 3)] |= (byte) (0x80 >>> (bitPos & 7));
+                }
+                bitPos++;
+            }
+        }
+        return out;
+    }
+
+    private static void decodePacked(ByteBuffer in, byte[] tiles) throws IOException {
+        int bits = bitsPerTile();
+        byte[] packed = new byte[(int) (((long) tiles.length * bits + 7) / 8)];
+        in.get(packed);
+        long bitPos = 0;
+        for (int i = 0; i < tiles.length; i++) {
+            int id = 0;
+            for (int b = 0; b < bits; b++) {
+                int bit = (packed[(int) (bitPos >>> 3)] >>> (7 - (bitPos & 7))) & 1;
+                id = (id << 1) | bit;
+                bitPos++;
+            }
+            tiles[i] = checkedId((byte) id);
+        }
+    }
+
+    /* Returns null when the result would be larger than PACKED anyway. */
+    private static byte[] encodeDeflate(byte[] tiles) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        deflater.setInput(tiles);
+        deflater.finish();
+        byte[] out = new byte[tiles.length / 2 + 64];
+        int n = 0;
+        try {
+            while (!deflater.finished()) {
+                if (n == out.length) {
+                    return null;
+                }
+                n += deflater.deflate(out, n, out.length - n);
+            }
+        } finally {
+            deflater.end();
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static void decodeDeflate(ByteBuffer in, byte[] tiles) throws IOException {
+        Inflater inflater = new Inflater();
+        inflater.setInput(in.array(), in.arrayOffset() + in.position(), in.remaining());
+        try {
+            int n = 0;
+            while (n < tiles.length && !inflater.finished()) {
+                int read = inflater.inflate(tiles, n, tiles.length - n);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += read;
+            }
+            if (n != tiles.length || !inflater.finished()) {
+                throw new IOException("save file corrupt: tile data has the wrong size");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("save file corrupt: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+        in.position(in.limit());
+        for (byte id : tiles) {
+            checkedId(id);
+        }
+    }
+
+    private static byte checkedId(byte id) throws IOException {
+        if (id < 0 || id >= TileRegistry.size()) {
+            throw new IOException("save file corrupt: unknown tile id " + id);
+        }
+        return id;
+    }
+
+    static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static int getVarint(ByteBuffer in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("save file corrupt: varint too long");
+    }
+}
@@ -0,0 +1,95 @@
+package byog.Core;
+
+import byog.TileEngine.TileRegistry;
+
+/**
+ * For every cell of a TileStore, how many steps can be taken in each direction before the next
+ * step would run into a wall or off the map. This is how far a ninja move slides, so with the
+ * table built a slide is a lookup instead of a walk along the corridor.
+ *
+ * Cells are numbered x + y * width. The table is built in one pass per direction; when a tile
+ * changes afterwards, update() recomputes just its row and column.
+ */
+class SlideTable {
+    private final TileStore tiles;
+    private final int width;
+    private final int height;
+    private final int[] up;
+    private final int[] down;
+    private final int[] left;
+    private final int[] right;
+
+    SlideTable(TileStore tiles) {
+        this.tiles = tiles;
+        this.width = tiles.width();
+        this.height = tiles.height();
+        int size = width * height;
+        up = new int[size];
+        down = new int[size];
+        left = new int[size];
+        right = new int[size];
+        for (int x = 0; x < width; x++) {
+            buildColumn(x);
+        }
+        for (int y = 0; y < height; y++) {
+            buildRow(y);
+        }
+    }
+
+    private boolean isWall(int x, int y) {
+        return tiles.get(x, y) == TileRegistry.WALL;
+    }
+
+    private void buildColumn(int x) {
+        down[x] = 0;
+        for (int y = 1; y < height; y++) {
+            int cell = x + y * width;
+            down[cell] = isWall(x, y - 1) ? 0 : down[cell - width] + 1;
+        }
+        up[x + (height - 1) * width] = 0;
+        for (int y = height - 2; y >= 0; y--) {
+            int cell = x + y * width;
+            up[cell] = isWall(x, y + 1) ? 0 : up[cell + width] + 1;
+        }
+    }
+
+    private void buildRow(int y) {
+        int row = y * width;
+        left[row] = 0;
+        for (int x = 1; x < width; x++) {
+            left[row + x] = isWall(x - 1, y) ? 0 : left[row + x - 1] + 1;
+        }
+        right[row + width - 1] = 0;
+        for (int x = width - 2; x >= 0; x--) {
+            right[row + x] = isWall(x + 1, y) ? 0 : right[row + x + 1] + 1;
+        }
+    }
+
+    /**
+     * Brings the table up to date after the tile at x, y changed.
+     */
+    void update(int x, int y) {
+        buildColumn(x);
+        buildRow(y);
+    }
+
+    /** @return steps from x, y towards larger y */
+    int up(int x, int y) {
+        return up[x + y * width];
+    }
+
+    /** @return steps from x, y towards smaller y */
+    int down(int x, int y) {
+        return down[x + y * width];
+    }
+
+    /** @return steps from x, y towards smaller x */
+    int left(int x, int y) {
+        return left[x + y * width];
+    }
+
+    /** @return steps from x, y towards larger x */
+    int right(int x, int y) {
+        return right[x + y * width];
+    }
+}
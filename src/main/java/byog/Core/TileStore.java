@@ -0,0 +1,32 @@
+package byog.Core;
+
+/**
+ * Storage for the tile ids of a Map (see TileRegistry). A fresh store holds only
+ * TileRegistry.NOTHING, which is id 0.
+ */
+public interface TileStore {
+    int width();
+
+    int height();
+
+    byte get(int x, int y);
+
+    void set(int x, int y, byte id);
+
+    /**
+     * Sets the tiles x0 (inclusive) to x1 (exclusive) of row y to id.
+     */
+    default void fillRow(int y, int x0, int x1, byte id) {
+        for (int x = x0; x < x1; x++) {
+            set(x, y, id);
+        }
+    }
+
+    /**
+     * @return true if the tiles live outside the heap, e.g. in a MappedTileStore, so that a
+     *         table with an entry per tile would not fit where the tiles themselves do
+     */
+    default boolean offHeap() {
+        return false;
+    }
+}
@@ -0,0 +1,80 @@
+package byog.Core;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of durations in nanoseconds with power-of-two buckets: bucket i counts durations in
+ * [2^(i-1), 2^i). Recording is a few arithmetic operations and never allocates. Meant to be
+ * written by one thread; readers on other threads may see slightly stale numbers.
+ */
+public class TimingHistogram {
+    private final String name;
+    private final long[] buckets = new long[64];
+    private long count;
+    private long total;
+    private long max;
+
+    public TimingHistogram(String name) {
+        this.name = name;
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets[64 - Long.numberOfLeadingZeros(nanos)]++;
+        count++;
+        total += nanos;
+        if (nanos > max) {
+            max = nanos;
+        }
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long maxNanos() {
+        return max;
+    }
+
+    public double meanNanos() {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    /**
+     * @param p fraction between 0 and 1, e.g. 0.99
+     * @return an upper bound for the p-th quantile: the top of the bucket it falls in
+     */
+    public long quantileNanos(double p) {
+        long rank = (long) Math.ceil(p * count);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= Math.max(rank, 1)) {
+                return Math.min(i == 0 ? 0 : (1L << i) - 1, max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return number of recorded durations in [2^(i-1), 2^i) nanoseconds
+     */
+    public long bucket(int i) {
+        return buckets[i];
+    }
+
+    public void reset() {
+        Arrays.fill(buckets, 0);
+        count = 0;
+        total = 0;
+        max = 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: n=%d mean=%.3fms p50<=%.3fms p99<=%.3fms max=%.3fms", name, count,
+                meanNanos() / 1e6, quantileNanos(0.5) / 1e6, quantileNanos(0.99) / 1e6, max / 1e6);
+    }
+}
@@ -0,0 +1,26 @@
+package byog.Core;
+
+/**
+ * Walks at random, one cell per tick, and never bumps into walls: each tick it picks a random
+ * direction and turns clockwise until it finds one that is open.
+ */
+public class WanderBehavior implements Behavior {
+    @Override
+    public char update(EntitySystem world, int id, long tick) {
+        Entities entities = world.entities();
+        int x = entities.x[id];
+        int y = entities.y[id];
+        int first = (int) (world.random(tick, id) >>> 62);
+        for (int i = 0; i < EntitySystem.MOVES.length; i++) {
+            char key = EntitySystem.MOVES[(first + i) & 3];
+            int nx = x + EntitySystem.dx(key);
+            int ny = y + EntitySystem.dy(key);
+            if (world.isWalkable(nx, ny)) {
+                entities.targetX[id] = nx;
+                entities.targetY[id] = ny;
+                return key;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,191 @@
+package byog.Core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+
+/**
+ * Generated worlds by seed, so playing the same seed again skips Map.initialize(). A cached
+ * world is kept as immutable tiles plus where initialize() left the player, the coins and the
+ * random generator. get() hands out a new Map over those tiles for every call: the Map copies
+ * the tiles only if something writes to them, and has its own player, coins and generator, so
+ * games played on it never change the cached world.
+ *
+ * The cache holds at most maxEntries worlds and about maxBytes bytes of them, evicting the least
+ * recently used first. It is safe to use from several threads; two threads missing the same
+ * world at once may both generate it.
+ *
+ * Ex:
+ *      WorldCache worlds = new WorldCache(64, 16 << 20);
+ *      Map map = worlds.get(seed, 80, 30, GeneratorVersion.CLASSIC, GameRandom.Kind.LCG48);
+ */
+public class WorldCache {
+    /* Rough bytes of an entry besides its tiles and coins. */
+    private static final int ENTRY_OVERHEAD = 160;
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<Key, World> worlds = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public WorldCache(int maxEntries, long maxBytes) {
+        if (maxEntries < 0 || maxBytes < 0) {
+            throw new IllegalArgumentException("negative cache size: " + maxEntries + " entries, "
+                    + maxBytes + " bytes");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return a new Map of the world initialize() generates from seed with the given size,
+     *         generator and random generator kind, and the default coin count
+     */
+    public Map get(long seed, int width, int height, GeneratorVersion version,
+                   GameRandom.Kind kind) {
+        Key key = new Key(seed, width, height, version, kind);
+        World world;
+        synchronized (this) {
+            world = worlds.get(key);
+            if (world != null) {
+                hits++;
+                return world.newMap();
+            }
+            misses++;
+        }
+
+        Map map = new Map(width, height);
+        map.setRandom(seed, kind);
+        map.setGenerator(version);
+        map.initialize();
+        world = new World(map);
+        synchronized (this) {
+            if (world.bytes() <= maxBytes && maxEntries > 0) {
+                World old = worlds.put(key, world);
+                bytes += world.bytes() - (old == null ? 0 : old.bytes());
+                evict();
+            }
+        }
+        return map;
+    }
+
+    private void evict() {
+        Iterator<World> eldest = worlds.values().iterator();
+        while (worlds.size() > maxEntries || bytes > maxBytes) {
+            bytes -= eldest.next().bytes();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void clear() {
+        worlds.clear();
+        bytes = 0;
+    }
+
+    /** @return number of worlds cached */
+    public synchronized int size() {
+        return worlds.size();
+    }
+
+    /** @return approximate size of the cached worlds in bytes */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    /** @return share of get() calls answered from the cache, 0 before the first call */
+    public synchronized double hitRate() {
+        long calls = hits + misses;
+        return calls == 0 ? 0 : (double) hits / calls;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("WorldCache[%d worlds, %d bytes, %d hits, %d misses, %.1f%% hit rate, "
+                + "%d evictions]", worlds.size(), bytes, hits, misses, hitRate() * 100, evictions);
+    }
+
+    private static final class Key {
+        private final long seed;
+        private final int width;
+        private final int height;
+        private final GeneratorVersion version;
+        private final GameRandom.Kind kind;
+
+        Key(long seed, int width, int height, GeneratorVersion version, GameRandom.Kind kind) {
+            this.seed = seed;
+            this.width = width;
+            this.height = height;
+            this.version = version;
+            this.kind = kind;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) obj;
+            return k.seed == seed && k.width == width && k.height == height
+                    && k.version == version && k.kind == kind;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(seed, width, height, version, kind);
+        }
+    }
+
+    /* A generated world as initialize() left it. Nothing here is written after construction. */
+    private static final class World {
+        private final int width;
+        private final int height;
+        private final byte[] tiles;
+        private final int playerX;
+        private final int playerY;
+        private final int[] coins;
+        private final GeneratorVersion version;
+        private final GameRandom.Kind kind;
+        private final long[] random;
+
+        World(Map map) {
+            width = map.width();
+            height = map.height();
+            tiles = map.tileIds();
+            playerX = map.playerX();
+            playerY = map.playerY();
+            coins = map.coinCells();
+            version = map.generator();
+            kind = map.randomKind();
+            random = map.randomState();
+        }
+
+        Map newMap() {
+            Map map = new Map(new CopyOnWriteTileStore(width, height, tiles));
+            map.setGenerator(version);
+            map.setPlayer(playerX, playerY);
+            map.setCoinCells(coins);
+            map.setRandomState(kind, random);
+            return map;
+        }
+
+        long bytes() {
+            return ENTRY_OVERHEAD + tiles.length + 4L * coins.length;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package byog.Core;
+
+/**
+ * The xoshiro256** generator of Blackman and Vigna, seeded through SplitMix64. A step yields 64
+ * bits with a few shifts, rotations and xors, so nextLong and nextDouble take one step where
+ * Lcg48Random takes two.
+ */
+public class Xoshiro256Random extends GameRandom {
+    private static final long serialVersionUID = 1L;
+
+    private long s0;
+    private long s1;
+    private long s2;
+    private long s3;
+
+    public Xoshiro256Random(long seed) {
+        super(seed);        // calls setSeed(seed)
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        s0 = mix(seed += GOLDEN_GAMMA);
+        s1 = mix(seed += GOLDEN_GAMMA);
+        s2 = mix(seed += GOLDEN_GAMMA);
+        s3 = mix(seed + GOLDEN_GAMMA);
+    }
+
+    @Override
+    public long nextLong() {
+        long result = Long.rotateLeft(s1 * 5, 7) * 9;
+        long t = s1 << 17;
+        s2 ^= s0;
+        s3 ^= s1;
+        s1 ^= s2;
+        s0 ^= s3;
+        s2 ^= t;
+        s3 = Long.rotateLeft(s3, 45);
+        return result;
+    }
+
+    @Override
+    protected int next(int bits) {
+        return (int) (nextLong() >>> (64 - bits));
+    }
+
+    @Override
+    public int nextInt() {
+        return (int) (nextLong() >>> 32);
+    }
+
+    @Override
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    @Override
+    public Kind kind() {
+        return Kind.XOSHIRO256;
+    }
+
+    @Override
+    public GameRandom split() {
+        return new Xoshiro256Random(nextLong());
+    }
+
+    @Override
+    public long[] state() {
+        return new long[] {s0, s1, s2, s3};
+    }
+
+    @Override
+    public void setState(long[] state) {
+        if (state.length != 4) {
+            throw new IllegalArgumentException("xoshiro256 state has 4 longs, not " + state.length);
+        }
+        if ((state[0] | state[1] | state[2] | state[3]) == 0) {
+            throw new IllegalArgumentException("xoshiro256 state can't be all zero");
+        }
+        s0 = state[0];
+        s1 = state[1];
+        s2 = state[2];
+        s3 = state[3];
+    }
+}
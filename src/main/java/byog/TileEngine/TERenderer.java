@@ -3,6 +3,8 @@ package byog.TileEngine;
 import edu.princeton.cs.introcs.StdDraw;
 
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.Field;
 
 /**
  * Utility class for rendering tiles. You do not need to modify this file. You're welcome
@@ -11,11 +13,16 @@ import java.awt.*;
  * allowing scrolling of the screen or tracking the player or something similar.
  */
 public class TERenderer {
-    private static final int TILE_SIZE = 16;
+    public static final int TILE_SIZE = 16;
     private int width;
     private int height;
     private int xOffset;
     private int yOffset;
+    /* Tiles currently on the canvas, indexed like the world arrays. Null until a full frame. */
+    private TETile[][] lastFrame;
+    private TileAtlas atlas;
+    /* StdDraw's offscreen buffer, drawn into directly with atlas images when it is reachable. */
+    private Graphics2D canvas;
 
     /**
      * Same functionality as the other initialization method. The only difference is that the xOff
@@ -33,7 +40,10 @@ public class TERenderer {
         this.yOffset = yOff;
         StdDraw.setCanvasSize(width * TILE_SIZE, height * TILE_SIZE);
         Font font = new Font("Monaco", Font.BOLD, TILE_SIZE - 2);
-        StdDraw.setFont(font);      
+        StdDraw.setFont(font);
+        if (atlas == null) {
+            atlas = new TileAtlas(TILE_SIZE, font);
+        }
         StdDraw.setXscale(0, width);
         StdDraw.setYscale(0, height);
 
@@ -41,6 +51,8 @@ public class TERenderer {
 
         StdDraw.enableDoubleBuffering();
         StdDraw.show();
+        lastFrame = null;
+        canvas = offscreenGraphics();
     }
 
     /**
@@ -83,18 +95,141 @@ public class TERenderer {
      * @param world the 2D TETile[][] array to render
      */
     public void renderFrame(TETile[][] world) {
-        int numXTiles = world.length;
-        int numYTiles = world[0].length;
+        renderFrame(WorldView.of(world));
+    }
+
+    /**
+     * Renders a world view like renderFrame(TETile[][]), reading every tile from the view.
+     * @param world the world to render
+     */
+    public void renderFrame(WorldView world) {
+        int numXTiles = world.width();
+        int numYTiles = world.height();
+        if (lastFrame == null || lastFrame.length != numXTiles
+                || lastFrame[0].length != numYTiles) {
+            lastFrame = new TETile[numXTiles][numYTiles];
+        }
         StdDraw.clear(new Color(0, 0, 0));
         for (int x = 0; x < numXTiles; x += 1) {
+            TETile[] lastColumn = lastFrame[x];
+            for (int y = 0; y < numYTiles; y += 1) {
+                TETile tile = world.get(x, y);
+                drawTile(tile, x, y);
+                lastColumn[y] = tile;
+            }
+        }
+        StdDraw.show();
+    }
+
+    /**
+     * Draws world into image instead of the StdDraw window, e.g. for screenshots or benchmarks.
+     * Tile (x, y) lands at the same pixels it would occupy on a canvas of the image's size, with
+     * xOffset and yOffset applied. Doesn't need StdDraw, so it also works headless.
+     * @param world the 2D TETile[][] array to render
+     * @param image the image to draw into
+     */
+    public void renderFrame(TETile[][] world, BufferedImage image) {
+        renderFrame(WorldView.of(world), image);
+    }
+
+    /**
+     * Draws a world view into image, like renderFrame(TETile[][], BufferedImage).
+     * @param world the world to render
+     * @param image the image to draw into
+     */
+    public void renderFrame(WorldView world, BufferedImage image) {
+        if (atlas == null) {
+            atlas = new TileAtlas(TILE_SIZE, new Font("Monaco", Font.BOLD, TILE_SIZE - 2));
+        }
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.black);
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        int rows = image.getHeight() / TILE_SIZE;
+        for (int x = 0; x < world.width(); x += 1) {
+            for (int y = 0; y < world.height(); y += 1) {
+                int px = (x + xOffset) * TILE_SIZE;
+                int py = (rows - 1 - y - yOffset) * TILE_SIZE;
+                g.drawImage(atlas.sprite(world.get(x, y)), px, py, null);
+            }
+        }
+        g.dispose();
+    }
+
+    /**
+     * Renders world like renderFrame, but only redraws the tiles that differ from the last frame
+     * drawn by this renderer. Falls back to a full renderFrame when nothing has been drawn yet
+     * or the world has a different size. Tiles are compared by identity.
+     * @param world the 2D TETile[][] array to render
+     */
+    public void renderChanges(TETile[][] world) {
+        renderChanges(WorldView.of(world));
+    }
+
+    /**
+     * Renders a world view like renderChanges(TETile[][]). Every tile of the view is read once
+     * and compared with the tile on the canvas, so a view of a live world can be passed every
+     * frame without building an array.
+     * @param world the world to render
+     */
+    public void renderChanges(WorldView world) {
+        int numXTiles = world.width();
+        int numYTiles = world.height();
+        if (lastFrame == null || lastFrame.length != numXTiles
+                || lastFrame[0].length != numYTiles) {
+            renderFrame(world);
+            return;
+        }
+
+        for (int x = 0; x < numXTiles; x += 1) {
+            TETile[] lastColumn = lastFrame[x];
             for (int y = 0; y < numYTiles; y += 1) {
-                if (world[x][y] == null) {
-                    throw new IllegalArgumentException("Tile at position x=" + x + ", y=" + y
-                            + " is null.");
+                TETile tile = world.get(x, y);
+                if (tile == lastColumn[y]) {
+                    continue;
                 }
-                world[x][y].draw(x + xOffset, y + yOffset);
+                drawTile(tile, x, y);
+                lastColumn[y] = tile;
             }
         }
         StdDraw.show();
     }
+
+    /**
+     * Redraws row y of the last frame, erasing anything drawn over it since, such as HUD text.
+     * Does nothing before the first frame. Does not call StdDraw.show().
+     * @param y row of the world, in tiles
+     */
+    public void redrawRow(int y) {
+        if (lastFrame == null || y < 0 || y >= lastFrame[0].length) {
+            return;
+        }
+        for (int x = 0; x < lastFrame.length; x += 1) {
+            drawTile(lastFrame[x][y], x, y);
+        }
+    }
+
+    /**
+     * Draws tile at world position x, y. The pre-rendered atlas image is copied straight into
+     * StdDraw's offscreen buffer; if that buffer couldn't be reached, TETile.draw is used.
+     */
+    private void drawTile(TETile tile, int x, int y) {
+        if (canvas == null) {
+            tile.draw(x + xOffset, y + yOffset);
+            return;
+        }
+        int px = (x + xOffset) * TILE_SIZE;
+        int py = (height - 1 - y - yOffset) * TILE_SIZE;
+        canvas.drawImage(atlas.sprite(tile), px, py, null);
+    }
+
+    /* StdDraw has no public image blit, so its offscreen Graphics2D is looked up reflectively. */
+    private static Graphics2D offscreenGraphics() {
+        try {
+            Field field = StdDraw.class.getDeclaredField("offscreen");
+            field.setAccessible(true);
+            return (Graphics2D) field.get(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
 }
@@ -4,7 +4,6 @@ import byog.Core.RandomUtils;
 import edu.princeton.cs.introcs.StdDraw;
 
 import java.awt.*;
-import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Random;
 
@@ -22,7 +21,7 @@ import java.util.Random;
  * to make your TETile class mutable, if you prefer.
  */
 
-public class TETile implements Serializable {
+public class TETile {
     private final char character; // Do not rename character or the autograder will break.
     private final Color textColor;
     private final Color backgroundColor;
@@ -106,6 +105,18 @@ public class TETile implements Serializable {
         return character;
     }
 
+    Color textColor() {
+        return textColor;
+    }
+
+    Color backgroundColor() {
+        return backgroundColor;
+    }
+
+    String filepath() {
+        return filepath;
+    }
+
     /**
      * Description of the tile. Useful for displaying mouseover text or
      * testing that two tiles represent the same type of thing.
@@ -0,0 +1,130 @@
+package byog.TileEngine;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Objects;
+
+/**
+ * Cache of pre-rendered tile images for one tile size. The first time a tile is looked up its
+ * background, glyph (or image file) is rasterized into a BufferedImage, and every later draw of
+ * a tile that looks the same is a plain image copy. Tiles are matched by appearance, so
+ * colorVariant copies with the same colors share one image.
+ */
+public class TileAtlas {
+    /* Tile instances remembered for the identity fast path before that map is reset. */
+    private static final int MAX_INSTANCES = 4096;
+
+    private final int tileSize;
+    private final Font font;
+    private final HashMap<Appearance, BufferedImage> images = new HashMap<>();
+    private final IdentityHashMap<TETile, BufferedImage> instances = new IdentityHashMap<>();
+
+    /**
+     * @param tileSize width and height of a tile in pixels
+     * @param font font used to draw tile characters, as set on StdDraw by TERenderer
+     */
+    public TileAtlas(int tileSize, Font font) {
+        this.tileSize = tileSize;
+        this.font = font;
+    }
+
+    /**
+     * @return the pre-rendered image of tile, tileSize pixels wide and high
+     */
+    public BufferedImage sprite(TETile tile) {
+        BufferedImage image = instances.get(tile);
+        if (image != null) {
+            return image;
+        }
+
+        Appearance key = new Appearance(tile);
+        image = images.get(key);
+        if (image == null) {
+            image = rasterize(tile);
+            images.put(key, image);
+        }
+        if (instances.size() >= MAX_INSTANCES) {
+            instances.clear();
+        }
+        instances.put(tile, image);
+        return image;
+    }
+
+    private BufferedImage rasterize(TETile tile) {
+        BufferedImage image = new BufferedImage(tileSize, tileSize, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+
+        if (tile.filepath() != null && drawImageFile(g, tile.filepath())) {
+            g.dispose();
+            return image;
+        }
+
+        // Same layout as TETile.draw: a filled square and the character centered on it
+        g.setColor(tile.backgroundColor());
+        g.fillRect(0, 0, tileSize, tileSize);
+        g.setColor(tile.textColor());
+        g.setFont(font);
+        FontMetrics metrics = g.getFontMetrics();
+        String text = Character.toString(tile.character());
+        int ws = metrics.stringWidth(text);
+        int hs = metrics.getDescent();
+        g.drawString(text, (float) (tileSize / 2.0 - ws / 2.0), (float) (tileSize / 2.0 + hs));
+        g.dispose();
+        return image;
+    }
+
+    /* Draws the image file centered like StdDraw.picture. Returns false if it can't be read. */
+    private boolean drawImageFile(Graphics2D g, String filepath) {
+        try {
+            BufferedImage file = ImageIO.read(new File(filepath));
+            if (file == null) {
+                return false;
+            }
+            int x = (int) Math.round(tileSize / 2.0 - file.getWidth() / 2.0);
+            int y = (int) Math.round(tileSize / 2.0 - file.getHeight() / 2.0);
+            g.drawImage(file, x, y, null);
+            return true;
+        } catch (IOException e) {
+            // Same as TETile.draw: fall back to the character and background color.
+            return false;
+        }
+    }
+
+    private static class Appearance {
+        private final char character;
+        private final int textColor;
+        private final int backgroundColor;
+        private final String filepath;
+
+        Appearance(TETile tile) {
+            character = tile.character();
+            textColor = tile.textColor().getRGB();
+            backgroundColor = tile.backgroundColor().getRGB();
+            filepath = tile.filepath();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Appearance)) {
+                return false;
+            }
+            Appearance that = (Appearance) obj;
+            return character == that.character && textColor == that.textColor
+                    && backgroundColor == that.backgroundColor
+                    && Objects.equals(filepath, that.filepath);
+        }
+
+        @Override
+        public int hashCode() {
+            return ((character * 31 + textColor) * 31 + backgroundColor) * 31
+                    + Objects.hashCode(filepath);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package byog.TileEngine;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Maps the constant tiles of Tileset to small integer ids, so that a world can be stored as a
+ * byte grid and tiles can be compared as numbers instead of by description. Only the Tileset
+ * constants themselves are registered; copies such as colorVariant results have no id.
+ *
+ * Ex:
+ *      byte id = TileRegistry.id(Tileset.WALL);     // TileRegistry.WALL
+ *      TETile t = TileRegistry.tile(id);            // Tileset.WALL
+ */
+public class TileRegistry {
+    public static final byte NOTHING = 0;
+    public static final byte FLOOR = 1;
+    public static final byte WALL = 2;
+    public static final byte GRASS = 3;
+    public static final byte LOCKED_DOOR = 4;
+    public static final byte UNLOCKED_DOOR = 5;
+    public static final byte COIN = 6;
+    public static final byte PLAYER = 7;
+    public static final byte WATER = 8;
+    public static final byte FLOWER = 9;
+    public static final byte SAND = 10;
+    public static final byte MOUNTAIN = 11;
+    public static final byte TREE = 12;
+    public static final byte GHOST = 13;
+
+    private static final TETile[] TILES = {
+        Tileset.NOTHING,
+        Tileset.FLOOR,
+        Tileset.WALL,
+        Tileset.GRASS,
+        Tileset.LOCKED_DOOR,
+        Tileset.UNLOCKED_DOOR,
+        Tileset.COIN,
+        Tileset.PLAYER,
+        Tileset.WATER,
+        Tileset.FLOWER,
+        Tileset.SAND,
+        Tileset.MOUNTAIN,
+        Tileset.TREE,
+        Tileset.GHOST,
+    };
+
+    /* Ids by tile identity, as copies of a constant are not registered. */
+    private static final Map<TETile, Byte> IDS = new IdentityHashMap<>();
+
+    static {
+        for (int i = 0; i < TILES.length; i++) {
+            IDS.put(TILES[i], (byte) i);
+        }
+    }
+
+    /**
+     * @return the Tileset constant registered under id
+     */
+    public static TETile tile(byte id) {
+        return TILES[id];
+    }
+
+    /**
+     * @return the id of a Tileset constant
+     * @throws IllegalArgumentException if the tile is not a registered Tileset constant
+     */
+    public static byte id(TETile tile) {
+        Byte id = IDS.get(tile);
+        if (id == null) {
+            throw new IllegalArgumentException("tile is not registered: " + tile.description());
+        }
+        return id;
+    }
+
+    /**
+     * @return number of registered tiles, every id lies in [0, size())
+     */
+    public static int size() {
+        return TILES.length;
+    }
+}
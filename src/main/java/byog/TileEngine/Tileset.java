@@ -34,6 +34,7 @@ public class Tileset {
     public static final TETile MOUNTAIN = new TETile('▲', Color.gray, Color.black, "mountain");
     public static final TETile TREE = new TETile('♠', Color.green, Color.black, "tree");
     public static final TETile COIN = new TETile('$', Color.black, Color.yellow, "coin");
+    public static final TETile GHOST = new TETile('&', Color.red, Color.black, "ghost");
 }
 
 
@@ -0,0 +1,65 @@
+package byog.TileEngine;
+
+/**
+ * Read-only view of a world, indexed like the TETile[][] arrays: x from the left, y from the
+ * bottom. Unlike an array, a view can compute its tiles when they are read, so a renderer can
+ * draw a live world without anything being copied per frame. A view reflects later changes to
+ * the world behind it; use snapshot() for a copy that doesn't.
+ */
+public interface WorldView {
+    /** @return width of the world in tiles */
+    int width();
+
+    /** @return height of the world in tiles */
+    int height();
+
+    /**
+     * @return the tile at x, y, never null
+     */
+    TETile get(int x, int y);
+
+    /**
+     * @return a new TETile[width()][height()] holding the tiles as they are now
+     */
+    default TETile[][] snapshot() {
+        TETile[][] copy = new TETile[width()][height()];
+        for (int x = 0; x < copy.length; x += 1) {
+            for (int y = 0; y < copy[x].length; y += 1) {
+                copy[x][y] = get(x, y);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * @return a view of world, which is not copied
+     */
+    static WorldView of(TETile[][] world) {
+        return new WorldView() {
+            @Override
+            public int width() {
+                return world.length;
+            }
+
+            @Override
+            public int height() {
+                return world[0].length;
+            }
+
+            @Override
+            public TETile get(int x, int y) {
+                TETile tile = world[x][y];
+                if (tile == null) {
+                    throw new IllegalArgumentException("Tile at position x=" + x + ", y=" + y
+                            + " is null.");
+                }
+                return tile;
+            }
+
+            @Override
+            public TETile[][] snapshot() {
+                return TETile.copyOf(world);
+            }
+        };
+    }
+}
@@ -0,0 +1,35 @@
+package byog.Core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ChunkedGeneratorTest {
+    @Test
+    void sameWorldOnAnyNumberOfThreads() {
+        for (GameRandom.Kind kind : GameRandom.Kind.values()) {
+            for (long seed = 0; seed < 5; seed++) {
+                Map one = Worlds.chunked(300, 170, seed, 1, kind);
+                for (int threads : new int[] {2, 4}) {
+                    Map many = Worlds.chunked(300, 170, seed, threads, kind);
+                    String what = kind + " seed " + seed + " on " + threads + " threads";
+                    Worlds.assertSameWorld(one, many, what);
+                    assertArrayEquals(one.randomState(), many.randomState(), what + ": random");
+                }
+            }
+        }
+    }
+
+    @Test
+    void rejectsWorldsSmallerThanAChunk() {
+        ChunkedGenerator generator = new ChunkedGenerator(32, 1);
+        try {
+            assertThrows(IllegalArgumentException.class,
+                    () -> generator.generate(new Map(15, 40), 1));
+        } finally {
+            generator.shutdown();
+        }
+        assertThrows(IllegalArgumentException.class, () -> new ChunkedGenerator(8, 1));
+    }
+}
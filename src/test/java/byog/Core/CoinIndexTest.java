@@ -0,0 +1,153 @@
+package byog.Core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CoinIndexTest {
+    private static final int WIDTH = 23;
+    private static final int HEIGHT = 11;
+
+    /* The list-based placement CoinIndex.place must reproduce. */
+    private static TreeSet<Integer> placeWithList(int[] candidates, int count, Random random) {
+        List<Integer> list = new ArrayList<>();
+        for (int cell : candidates) {
+            list.add(cell);
+        }
+        TreeSet<Integer> placed = new TreeSet<>();
+        for (int i = 0; i < count && !list.isEmpty(); i++) {
+            placed.add(list.remove(random.nextInt(list.size())));
+        }
+        return placed;
+    }
+
+    private static TreeSet<Integer> cellsOf(CoinIndex coins) {
+        TreeSet<Integer> cells = new TreeSet<>();
+        for (int cell = coins.next(0); cell >= 0; cell = coins.next(cell + 1)) {
+            cells.add(cell);
+        }
+        return cells;
+    }
+
+    @Test
+    void placesCoinsWhereTheListPlacementDid() {
+        Random shuffle = new Random(1);
+        for (int round = 0; round < 500; round++) {
+            int n = shuffle.nextInt(WIDTH * HEIGHT);
+            int[] candidates = new int[n];
+            for (int i = 0; i < n; i++) {
+                candidates[i] = shuffle.nextInt(WIDTH * HEIGHT);
+            }
+            int count = shuffle.nextInt(n + 5);
+
+            CoinIndex coins = new CoinIndex(WIDTH, HEIGHT);
+            coins.place(candidates, count, new Random(round));
+            TreeSet<Integer> expected = placeWithList(candidates, count, new Random(round));
+            assertEquals(expected, cellsOf(coins), "round " + round);
+            assertEquals(expected.size(), coins.size());
+        }
+    }
+
+    @Test
+    void placementDrawsOneNumberPerCoin() {
+        int[] candidates = {5, 9, 40, 41, 100};
+        Random random = new Random(7);
+        new CoinIndex(WIDTH, HEIGHT).place(candidates, 3, random);
+        Random expected = new Random(7);
+        for (int i = 0; i < 3; i++) {
+            expected.nextInt(candidates.length - i);
+        }
+        assertEquals(expected.nextLong(), random.nextLong());
+    }
+
+    @Test
+    void removeReportsWhetherTheCellHadACoin() {
+        CoinIndex coins = new CoinIndex(WIDTH, HEIGHT);
+        coins.add(12);
+        coins.add(12);
+        coins.add(200);
+        assertEquals(2, coins.size());
+        assertTrue(coins.remove(200));
+        assertFalse(coins.remove(200));
+        assertFalse(coins.contains(200));
+        assertEquals(12, coins.next(0));
+        assertEquals(-1, coins.next(13));
+    }
+
+    @Test
+    void removesOnlyTheCellsOfTheRunAsked() {
+        CoinIndex coins = new CoinIndex(WIDTH, HEIGHT);
+        // Row 2 from x = 3 to 6, and the cells just outside it
+        for (int cell : new int[] {2 + 2 * WIDTH, 3 + 2 * WIDTH, 6 + 2 * WIDTH, 7 + 2 * WIDTH,
+                3 + 3 * WIDTH}) {
+            coins.add(cell);
+        }
+        assertEquals(2, coins.removeInRow(2, 3, 6));
+        assertEquals(0, coins.removeInRow(2, 3, 6));
+        assertEquals(1, coins.removeInColumn(3, 0, HEIGHT - 1));
+        assertEquals(2, coins.size());
+        assertTrue(coins.contains(2 + 2 * WIDTH));
+        assertTrue(coins.contains(7 + 2 * WIDTH));
+    }
+
+    @Test
+    void coinsOnTheLastCellsOfAHugeMap() {
+        int side = 46340;
+        int last = side * side - 1;
+        CoinIndex coins = new CoinIndex(side, side);
+        coins.addAll(new int[] {last, last - side, 7, last}, 4);
+        assertEquals(3, coins.size());
+        assertEquals(last - side, coins.next(8));
+        assertEquals(2, coins.removeInColumn(side - 1, 0, side - 1));
+        assertEquals(-1, coins.next(8));
+        assertEquals(7, coins.next(0));
+    }
+
+    @Test
+    void rowAndColumnRemovalsMatchSingleRemovals() {
+        Random random = new Random(2);
+        for (int round = 0; round < 500; round++) {
+            CoinIndex coins = new CoinIndex(WIDTH, HEIGHT);
+            TreeSet<Integer> expected = new TreeSet<>();
+            for (int i = 0; i < 80; i++) {
+                int cell = random.nextInt(WIDTH * HEIGHT);
+                coins.add(cell);
+                expected.add(cell);
+            }
+
+            int removed;
+            int wanted = 0;
+            if (random.nextBoolean()) {
+                int y = random.nextInt(HEIGHT);
+                int x0 = random.nextInt(WIDTH);
+                int x1 = x0 + random.nextInt(WIDTH - x0);
+                for (int x = x0; x <= x1; x++) {
+                    wanted += expected.remove(x + y * WIDTH) ? 1 : 0;
+                }
+                removed = coins.removeInRow(y, x0, x1);
+            } else {
+                int x = random.nextInt(WIDTH);
+                int y0 = random.nextInt(HEIGHT);
+                int y1 = y0 + random.nextInt(HEIGHT - y0);
+                for (int y = y0; y <= y1; y++) {
+                    wanted += expected.remove(x + y * WIDTH) ? 1 : 0;
+                }
+                removed = coins.removeInColumn(x, y0, y1);
+            }
+            assertEquals(wanted, removed);
+            assertEquals(expected, cellsOf(coins));
+            assertEquals(expected.size(), coins.size());
+            for (int cell : expected) {
+                assertTrue(coins.remove(cell));
+            }
+            assertEquals(0, coins.size());
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package byog.Core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommandPlanTest {
+    /* The plan as "key count" pairs, e.g. "w3 d1 :0". */
+    private static String ops(CommandPlan plan) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < plan.size(); i++) {
+            sb.append(i == 0 ? "" : " ").append(plan.key(i)).append(plan.count(i));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    void compilesStartSeedAndRuns() {
+        CommandPlan plan = CommandPlan.compile("N12wwWdxs3s:q");
+        assertEquals('n', plan.start());
+        assertTrue(plan.hasSeed());
+        assertEquals(123, plan.seed());
+        assertEquals("w3 d1 s2 :0", ops(plan));
+        assertEquals(6, plan.moves());
+    }
+
+    @Test
+    void colonSwallowsTheNextKeyUnlessItIsQ() {
+        assertEquals("w1 s1", ops(CommandPlan.compile("n1w:ws")));
+        assertEquals("d2 :0", ops(CommandPlan.compile("l:xdd:Qwww")));
+        assertEquals("a1", ops(CommandPlan.compile("n1a:")));
+    }
+
+    @Test
+    void digitsAfterASaveStillCountTowardsTheSeed() {
+        CommandPlan plan = CommandPlan.compile("n1s:qw2");
+        assertEquals(12, plan.seed());
+        assertEquals("s1 :0", ops(plan));
+    }
+
+    @Test
+    void keysHaveNoStartKey() {
+        CommandPlan plan = CommandPlan.compileKeys("ddaa");
+        assertEquals(0, plan.start());
+        assertFalse(plan.hasSeed());
+        assertEquals("d2 a2", ops(plan));
+    }
+
+    @Test
+    void rejectsEmptyInputAndOversizedSeeds() {
+        assertThrows(IllegalArgumentException.class, () -> CommandPlan.compile(""));
+        assertThrows(IllegalArgumentException.class,
+                () -> CommandPlan.compile("n9223372036854775808"));
+        assertEquals(Long.MAX_VALUE, CommandPlan.compile("n9223372036854775807").seed());
+    }
+
+    @Test
+    void runMovesAsSingleControlsDo() {
+        Random random = new Random(19);
+        String alphabet = "wasdWASD:qx";
+        for (int round = 0; round < 500; round++) {
+            StringBuilder input = new StringBuilder("n").append(round);
+            for (int i = random.nextInt(300); i > 0; i--) {
+                char c = alphabet.charAt(random.nextInt(alphabet.length()));
+                int repeat = random.nextInt(4) == 0 ? random.nextInt(100) : 1;
+                if (random.nextInt(50) == 0) {
+                    input.append(random.nextInt(10));
+                }
+                for (int j = 0; j < repeat; j++) {
+                    input.append(c);
+                }
+            }
+            CommandPlan plan = CommandPlan.compile(input.toString());
+
+            Map expected = Worlds.generated(80, 30, plan.seed());
+            int saveAt = plan.size();
+            for (int i = 0; i < plan.size(); i++) {
+                if (plan.key(i) == CommandPlan.SAVE) {
+                    saveAt = i;
+                    break;
+                }
+                for (int j = 0; j < plan.count(i); j++) {
+                    expected.control(plan.key(i));
+                }
+            }
+
+            Map actual = Worlds.generated(80, 30, plan.seed());
+            assertEquals(saveAt, plan.run(actual));
+            Worlds.assertSameWorld(expected, actual, input.toString());
+        }
+    }
+}
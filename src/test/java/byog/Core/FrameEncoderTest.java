@@ -0,0 +1,100 @@
+package byog.Core;
+
+import byog.TileEngine.TETile;
+import byog.TileEngine.TileRegistry;
+import byog.TileEngine.Tileset;
+import byog.TileEngine.WorldView;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrameEncoderTest {
+    private static void assertSameView(WorldView expected, WorldView actual, String what) {
+        assertEquals(expected.width(), actual.width(), what + ": width");
+        assertEquals(expected.height(), actual.height(), what + ": height");
+        for (int x = 0; x < expected.width(); x++) {
+            for (int y = 0; y < expected.height(); y++) {
+                assertEquals(TileRegistry.id(expected.get(x, y)), TileRegistry.id(actual.get(x, y)),
+                        what + ": tile " + x + ", " + y);
+            }
+        }
+    }
+
+    /* Plays seed with random keys, checking the decoded stream after every move. */
+    private static FrameEncoder playAndDecode(long seed, int keyframeInterval, boolean compress)
+            throws IOException {
+        Map map = Worlds.generated(80, 30, seed);
+        FrameEncoder encoder = new FrameEncoder(keyframeInterval, compress);
+        FrameDecoder decoder = new FrameDecoder();
+        Random random = new Random(seed);
+        for (int i = 0; i < 200; i++) {
+            char key = "wasd".charAt(random.nextInt(4));
+            if (random.nextInt(10) == 0) {
+                map.ninjaControl(key);
+            } else {
+                map.control(key);
+            }
+            decoder.decode(encoder.encode(map.view()));
+            assertSameView(map.view(), decoder.view(), "seed " + seed + " frame " + i);
+        }
+        return encoder;
+    }
+
+    @Test
+    void decodedStreamMatchesEveryFrame() throws IOException {
+        for (long seed = 0; seed < 10; seed++) {
+            playAndDecode(seed, 300, true);
+            playAndDecode(seed, 300, false);
+            playAndDecode(seed, 7, true);
+            assertEquals(200, playAndDecode(seed, 1, false).keyframes());
+        }
+    }
+
+    @Test
+    void worldsOfAnotherSizeStartWithAKeyframe() throws IOException {
+        FrameEncoder encoder = new FrameEncoder(300, true);
+        FrameDecoder decoder = new FrameDecoder();
+        for (int size = 20; size <= 60; size += 20) {
+            Map map = Worlds.generated(size * 2, size, size);
+            decoder.decode(encoder.encode(map.view()));
+            assertSameView(map.view(), decoder.view(), "size " + size);
+        }
+        assertEquals(3, encoder.keyframes());
+    }
+
+    @Test
+    void deltaAfterALostFrameIsRejected() throws IOException {
+        Map map = Worlds.generated(80, 30, 5);
+        FrameEncoder encoder = new FrameEncoder(300, false);
+        FrameDecoder decoder = new FrameDecoder();
+        assertFalse(decoder.ready());
+        decoder.decode(encoder.encode(map.view()));
+        assertTrue(decoder.ready());
+
+        map.control('w');
+        encoder.encode(map.view());
+        map.control('d');
+        ByteBuffer delta = encoder.encode(map.view());
+        assertThrows(IOException.class, () -> decoder.decode(delta));
+
+        encoder.requestKeyframe();
+        decoder.decode(encoder.encode(map.view()));
+        assertSameView(map.view(), decoder.view(), "after keyframe");
+    }
+
+    @Test
+    void unregisteredTilesAreRejected() {
+        TETile[][] tiles = Worlds.generated(80, 30, 6).getFloorTiles();
+        FrameEncoder encoder = new FrameEncoder(300, false);
+        encoder.encode(WorldView.of(tiles));
+        tiles[3][4] = TETile.colorVariant(Tileset.FLOOR, 30, 30, 30, new Random(6));
+        assertThrows(IllegalArgumentException.class, () -> encoder.encode(WorldView.of(tiles)));
+    }
+}
@@ -0,0 +1,89 @@
+package byog.Core;
+
+import byog.TileEngine.TileRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MapMoveTest {
+    private static final String KEYS = "wasd";
+
+    /*
+     * Ten tiles wide, with a corridor along y = 1 walled at x = 0 and x = 8, and three coins:
+     * two in the corridor and one beside it.
+     */
+    private static Map corridor() {
+        Map map = new Map(10, 3);
+        for (int x = 1; x < 8; x++) {
+            map.tileStore().set(x, 1, TileRegistry.FLOOR);
+        }
+        map.tileStore().set(0, 1, TileRegistry.WALL);
+        map.tileStore().set(8, 1, TileRegistry.WALL);
+        map.setPlayer(1, 1);
+        map.setCoinCells(new int[] {2, 3 + 10, 6 + 10});
+        return map;
+    }
+
+    @Test
+    void ninjaSlidesToTheWallCollectingTheCorridorsCoins() {
+        Map map = corridor();
+        map.ninjaControl('d');
+        assertEquals(7, map.playerX());
+        assertEquals(1, map.playerY());
+        assertArrayEquals(new int[] {2}, map.coinCells());
+        map.ninjaControl('a');
+        assertEquals(1, map.playerX());
+    }
+
+    @Test
+    void ninjaSlidesAsFarAsRepeatedSteps() {
+        Random random = new Random(14);
+        for (long seed = 0; seed < 200; seed++) {
+            Map stepped = Worlds.generated(80, 30, seed, 80 * 30 / 8);
+            Map slid = Worlds.generated(80, 30, seed, 80 * 30 / 8);
+            // A step picks up a coin under the start, which a slide of 0 tiles would leave
+            stepped.control(' ');
+            slid.control(' ');
+            for (int i = 0; i < 60; i++) {
+                char key = KEYS.charAt(random.nextInt(KEYS.length()));
+                int x;
+                int y;
+                do {
+                    x = stepped.playerX();
+                    y = stepped.playerY();
+                    stepped.control(key);
+                } while (x != stepped.playerX() || y != stepped.playerY());
+                slid.ninjaControl(key);
+                Worlds.assertSameWorld(stepped, slid, "seed " + seed + " slide " + i);
+            }
+        }
+    }
+
+    @Test
+    void moveStepsAsRepeatedControlsDo() {
+        Random random = new Random(19);
+        for (long seed = 0; seed < 200; seed++) {
+            Map stepped = Worlds.generated(120, 60, seed, 120 * 60 / 8);
+            Map moved = Worlds.generated(120, 60, seed, 120 * 60 / 8);
+            stepped.control(' ');
+            moved.control(' ');
+            for (int i = 0; i < 60; i++) {
+                char key = KEYS.charAt(random.nextInt(KEYS.length()));
+                // Short runs are walked, long ones and any after a slide use the slide table
+                int count = random.nextInt(i % 5 == 4 ? 150 : 20);
+                if (i == 30) {
+                    stepped.ninjaControl(key);
+                    moved.ninjaControl(key);
+                }
+                for (int j = 0; j < count; j++) {
+                    stepped.control(key);
+                }
+                moved.move(key, count);
+                Worlds.assertSameWorld(stepped, moved, "seed " + seed + " move " + i);
+            }
+        }
+    }
+}
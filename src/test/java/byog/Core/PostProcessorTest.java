@@ -0,0 +1,100 @@
+package byog.Core;
+
+import byog.TileEngine.TileRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PostProcessorTest {
+    private static boolean isOpen(TileStore tiles, int x, int y) {
+        byte id = tiles.get(x, y);
+        return id == TileRegistry.FLOOR || id == TileRegistry.GRASS;
+    }
+
+    /* The four passes PostProcessor replaced, as Map ran them: walls, grass, door, coins. */
+    private static void postProcessByPasses(Map map) {
+        TileStore tiles = map.tileStore();
+        int width = tiles.width();
+        int height = tiles.height();
+        Random random = map.random;
+
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                if (tiles.get(x, y) != TileRegistry.FLOOR) {
+                    continue;
+                }
+                for (int dx = -1; dx <= 1; dx++) {
+                    for (int dy = -1; dy <= 1; dy++) {
+                        int nx = x + dx;
+                        int ny = y + dy;
+                        if (nx >= 0 && nx < width && ny >= 0 && ny < height
+                                && tiles.get(nx, ny) == TileRegistry.NOTHING) {
+                            tiles.set(nx, ny, TileRegistry.WALL);
+                        }
+                    }
+                }
+            }
+        }
+
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                if (tiles.get(x, y) == TileRegistry.FLOOR && RandomUtils.gaussian(random) > 0.8) {
+                    tiles.set(x, y, TileRegistry.GRASS);
+                }
+            }
+        }
+
+        door:
+        for (int x = width / 3; x < width * 2 / 3; x++) {
+            for (int y = 0; y < height / 2; y++) {
+                if (tiles.get(x, y) == TileRegistry.WALL && isOpen(tiles, x, y + 1)
+                        && (y == 0 || tiles.get(x, y - 1) == TileRegistry.NOTHING)) {
+                    tiles.set(x, y, TileRegistry.LOCKED_DOOR);
+                    map.setPlayer(x, y + 1);
+                    break door;
+                }
+            }
+        }
+
+        int[] candidates = new int[width * height];
+        int n = 0;
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                if (isOpen(tiles, x, y)) {
+                    candidates[n++] = x + y * width;
+                }
+            }
+        }
+        CoinIndex coins = new CoinIndex(width, height);
+        coins.place(Arrays.copyOf(candidates, n), map.coinCount(), random);
+        int[] cells = new int[coins.size()];
+        int i = 0;
+        for (int cell = coins.next(0); cell >= 0; cell = coins.next(cell + 1)) {
+            cells[i++] = cell;
+        }
+        map.setCoinCells(cells);
+        map.tilesChanged();
+    }
+
+    @Test
+    void matchesTheFourPasses() {
+        int[][] sizes = {{80, 30}, {64, 64}, {130, 71}, {200, 100}, {16, 16}};
+        for (int[] size : sizes) {
+            for (long seed = 0; seed < 60; seed++) {
+                boolean byRooms = seed % 2 == 1;
+                Map expected = Worlds.linked(size[0], size[1], seed, byRooms);
+                postProcessByPasses(expected);
+                Map actual = Worlds.linked(size[0], size[1], seed, byRooms);
+                actual.postProcess();
+
+                String what = size[0] + "x" + size[1] + " seed " + seed;
+                Worlds.assertSameWorld(expected, actual, what);
+                assertEquals(expected.random.nextLong(), actual.random.nextLong(),
+                        what + ": random numbers drawn");
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package byog.Core;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SaveFormatTest {
+    private static void assertSameGame(Map expected, Map actual) {
+        assertEquals(expected.width(), actual.width());
+        assertEquals(expected.height(), actual.height());
+        Worlds.assertSameWorld(expected, actual, "restored");
+        assertEquals(expected.randomKind(), actual.randomKind());
+        assertArrayEquals(expected.randomState(), actual.randomState());
+    }
+
+    @Test
+    void roundTripKeepsTilesPlayerCoinsAndRandom() throws IOException {
+        for (GameRandom.Kind kind : GameRandom.Kind.values()) {
+            for (long seed = 0; seed < 50; seed++) {
+                Map map = Worlds.generated(80, 30, seed, kind);
+                for (char key : "wwddssaawdsa".toCharArray()) {
+                    map.control(key);
+                }
+                Map restored = SaveFormat.decode(SaveFormat.encode(map));
+                assertSameGame(map, restored);
+                // The restored generator goes on with the same numbers
+                assertEquals(map.random.nextLong(), restored.random.nextLong());
+            }
+        }
+    }
+
+    @Test
+    void emptyMapRoundTrips() throws IOException {
+        Map map = new Map(33, 17);
+        assertSameGame(map, SaveFormat.decode(SaveFormat.encode(map)));
+    }
+
+    @Test
+    void writeReplacesTheSaveAndLeavesNoTemporaryFile() throws IOException {
+        Path dir = Files.createTempDirectory("save-test");
+        Path path = dir.resolve("map.sav");
+        try {
+            SaveFormat.write(Worlds.generated(80, 30, 1, GameRandom.Kind.LCG48), path);
+            Map second = Worlds.generated(80, 30, 2, GameRandom.Kind.XOSHIRO256);
+            SaveFormat.write(second, path);
+            assertSameGame(second, SaveFormat.read(path));
+            try (Stream<Path> files = Files.list(dir)) {
+                assertEquals(1, files.count());
+            }
+        } finally {
+            Files.deleteIfExists(path);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    void corruptSaveIsRejected() throws IOException {
+        ByteBuffer buf = SaveFormat.encode(Worlds.generated(80, 30, 3, GameRandom.Kind.LCG48));
+        byte[] bytes = new byte[buf.remaining()];
+        buf.get(bytes);
+        for (int i = 0; i < bytes.length; i += 7) {
+            byte[] damaged = bytes.clone();
+            damaged[i] ^= 0x10;
+            assertThrows(IOException.class, () -> SaveFormat.decode(ByteBuffer.wrap(damaged)));
+        }
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length / 2);
+        assertThrows(IOException.class, () -> SaveFormat.decode(ByteBuffer.wrap(truncated)));
+    }
+
+    /* The save of an 80x30 world with the int at offset set to value, checksum fixed up. */
+    private static ByteBuffer withInt(int offset, int value) {
+        ByteBuffer buf = SaveFormat.encode(Worlds.generated(80, 30, 5));
+        buf.putInt(offset, value);
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 0, buf.limit() - 4);
+        buf.putInt(buf.limit() - 4, (int) crc.getValue());
+        return buf;
+    }
+
+    @Test
+    void headerOutsideItsLimitsIsRejected() {
+        int width = 6;
+        int height = 10;
+        int playerX = 14;
+        int coinCount = 4 + 2 + 4 * 4 + 1 + 1 + 8;
+        int[][] cases = {
+            {width, 0}, {width, -80}, {height, 1 << 22}, {width, Integer.MAX_VALUE},
+            {playerX, -1}, {playerX, 80}, {coinCount, -1}, {coinCount, 1 << 30},
+        };
+        for (int[] c : cases) {
+            IOException e = assertThrows(IOException.class,
+                    () -> SaveFormat.decode(withInt(c[0], c[1])));
+            assertTrue(e.getMessage().startsWith("save file corrupt"), e.getMessage());
+        }
+    }
+
+    @Test
+    void worldTooLargeToReadBackIsNotWritten() {
+        TileStore huge = new TileStore() {
+            @Override
+            public int width() {
+                return 1 << 15;
+            }
+
+            @Override
+            public int height() {
+                return 1 << 14;
+            }
+
+            @Override
+            public byte get(int x, int y) {
+                return 0;
+            }
+
+            @Override
+            public void set(int x, int y, byte id) {
+            }
+        };
+        assertThrows(IllegalArgumentException.class, () -> SaveFormat.encode(new Map(huge)));
+    }
+
+    @Test
+    void readsVersionOne() throws IOException {
+        Map map = Worlds.generated(80, 30, 4, GameRandom.Kind.LCG48);
+        ByteBuffer v2 = SaveFormat.encode(map);
+        // Version 1 has the single long of Lcg48Random state in place of kind, count and state
+        int header = 4 + 2 + 4 * 4;
+        int rest = header + 1 + 1 + 8;
+        ByteBuffer v1 = ByteBuffer.allocate(v2.remaining() - 2);
+        v1.put(v2.array(), 0, header);
+        v1.putShort(4, (short) 1);
+        v1.putLong(map.randomState()[0]);
+        v1.put(v2.array(), rest, v2.remaining() - rest - 4);
+        CRC32 crc = new CRC32();
+        crc.update(v1.array(), 0, v1.position());
+        v1.putInt((int) crc.getValue());
+        v1.flip();
+
+        assertSameGame(map, SaveFormat.decode(v1));
+    }
+}
@@ -0,0 +1,79 @@
+package byog.Core;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Worlds the tests start from, and the assertion comparing two of them after each has been
+ * played or generated its own way.
+ */
+final class Worlds {
+    private Worlds() {
+    }
+
+    /** A width x height map drawing from seed, not generated yet. */
+    static Map seeded(int width, int height, long seed) {
+        Map map = new Map(width, height);
+        map.setRandom(seed);
+        return map;
+    }
+
+    /** The world Game generates from seed. */
+    static Map generated(int width, int height, long seed) {
+        Map map = seeded(width, height, seed);
+        map.initialize();
+        return map;
+    }
+
+    /** The world generated from seed by a generator of the given kind. */
+    static Map generated(int width, int height, long seed, GameRandom.Kind kind) {
+        Map map = new Map(width, height);
+        map.setRandom(seed, kind);
+        map.initialize();
+        return map;
+    }
+
+    /** The world generated from seed with the given number of coins. */
+    static Map generated(int width, int height, long seed, int coins) {
+        Map map = seeded(width, height, seed);
+        map.setCoinCount(coins);
+        map.initialize();
+        return map;
+    }
+
+    /** A map with rooms drawn and linked, the state initialize() post-processes. */
+    static Map linked(int width, int height, long seed, boolean byRooms) {
+        Map map = seeded(width, height, seed);
+        map.setCoinCount(width * height / 50);
+        Map.Room[] rooms = map.createRoomScheme(RandomUtils.uniform(map.random, 25, 30));
+        map.drawRooms(rooms);
+        if (byRooms) {
+            map.linkRooms(rooms);
+        } else {
+            map.linkRegions();
+        }
+        return map;
+    }
+
+    /** The world ChunkedGenerator generates from seed on the given number of threads. */
+    static Map chunked(int width, int height, long seed, int threads, GameRandom.Kind kind) {
+        Map map = new Map(width, height);
+        map.setCoinCount(width * height / 100);
+        ChunkedGenerator generator = new ChunkedGenerator(32, threads);
+        try {
+            generator.setRandomKind(kind);
+            generator.generate(map, seed);
+        } finally {
+            generator.shutdown();
+        }
+        return map;
+    }
+
+    /** Asserts that actual has the tiles, player and coins of expected. */
+    static void assertSameWorld(Map expected, Map actual, String what) {
+        assertArrayEquals(expected.tileIds(), actual.tileIds(), what + ": tiles");
+        assertEquals(expected.playerX(), actual.playerX(), what + ": player x");
+        assertEquals(expected.playerY(), actual.playerY(), what + ": player y");
+        assertArrayEquals(expected.coinCells(), actual.coinCells(), what + ": coins");
+    }
+}